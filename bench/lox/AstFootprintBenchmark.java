@@ -0,0 +1,47 @@
+package lox;
+
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Heap retained by a script's syntax tree as Expr/Stmt objects, and as a FlatAst.
+ * Both are measured as heap in use after a full GC, with only that form of the
+ * tree reachable; Strings shared by both (names, string literals) count in both.
+ * <pre>
+ * java -cp out lox.AstFootprintBenchmark big.lox
+ * </pre>
+ */
+public class AstFootprintBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.out.println("Usage: AstFootprintBenchmark <script>");
+            System.exit(64);
+        }
+
+        long base = usedAfterGc();
+        List<Stmt> stmts = compile(Path.of(args[0]));
+        long objects = usedAfterGc() - base;
+
+        FlatAst flat = FlatAst.flatten(stmts);
+        stmts = null;
+        long arrays = usedAfterGc() - base;
+
+        System.out.printf("objects: %d MB%nflat:    %d MB (%d ints of nodes, %d tokens)%nratio:   %.1fx%n",
+                objects >> 20, arrays >> 20, flat.nodes.length, flat.lines.length, (double) objects / arrays);
+    }
+
+    private static List<Stmt> compile(Path path) throws Exception {
+        CharBuffer source = Lox.readSource(path);
+        return Lox.compile(source.array(), source.limit(), Lox.CONSOLE);
+    }
+
+    private static long usedAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
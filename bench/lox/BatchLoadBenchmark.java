@@ -0,0 +1,78 @@
+package lox;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Time for BatchLoader to compile many scripts, with pools of 1, 2, 4, ...
+ * threads up to the number of cores, to see how loading scales.
+ * Loads the given scripts, or a generated project of 200 files.
+ * <pre>
+ * java -cp out lox.BatchLoadBenchmark [script...]
+ * </pre>
+ */
+public class BatchLoadBenchmark {
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(Path.of(arg));
+        }
+        if (files.isEmpty()) files = generate(200);
+
+        for (int i = 0; i < WARMUP; i++) {
+            new BatchLoader().load(files);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int doubling = 1; doubling < cores * 2; doubling *= 2) {
+            int threads = Math.min(doubling, cores);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            BatchLoader loader = new BatchLoader(pool);
+
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                loader.load(files);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+
+            double millis = best / 1e6;
+            if (threads == 1) single = millis;
+            System.out.printf("%d files, %d threads: best %.1f ms, speedup %.2fx%n",
+                    files.size(), threads, millis, single / millis);
+        }
+    }
+
+    /**
+     * Writes a project of files that each declare a few dozen small functions.
+     */
+    private static List<Path> generate(int count) throws Exception {
+        Path directory = Files.createTempDirectory("lox-batch");
+        directory.toFile().deleteOnExit();
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder source = new StringBuilder();
+            for (int j = 0; j < 50; j++) {
+                source.append("fun f").append(i).append('_').append(j).append("(a, b) {\n")
+                        .append("    var total = 0;\n")
+                        .append("    while (a > b) { total = total + a * 2; a = a - 1; }\n")
+                        .append("    if (total > 10 and b != nil) print \"big\"; else print total;\n")
+                        .append("    return total;\n")
+                        .append("}\n");
+            }
+            Path file = directory.resolve("file" + i + ".jlox");
+            Files.writeString(file, source);
+            file.toFile().deleteOnExit();
+            files.add(file);
+        }
+        return files;
+    }
+}
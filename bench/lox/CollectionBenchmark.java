@@ -0,0 +1,99 @@
+package lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Lists and maps on the tree-walking Interpreter: filling a list of a million
+ * numbers and summing it, first while it keeps them in a double[] and then
+ * with the same list promoted to an Object[] by a string pushed before the
+ * numbers; then building a hundred thousand string keys, setting each in a
+ * map and getting it back. Every run checks its result. Also prints the heap
+ * a million-number list takes both ways.
+ * <pre>
+ * java -cp out lox.CollectionBenchmark
+ * </pre>
+ */
+public class CollectionBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int NUMBERS = 1_000_000;
+
+    private static final String LIST = """
+            var l = list();
+            %s
+            var first = len(l);
+            for (var i = 0; i < %d; i = i + 1) push(l, i);
+            var sum = 0;
+            for (var i = first; i < len(l); i = i + 1) sum = sum + get(l, i);
+            """;
+
+    /** Keys are the 100000 five-letter strings over a to j. */
+    private static final String MAP = """
+            var letters = list();
+            push(letters, "a"); push(letters, "b"); push(letters, "c"); push(letters, "d"); push(letters, "e");
+            push(letters, "f"); push(letters, "g"); push(letters, "h"); push(letters, "i"); push(letters, "j");
+            var keys = list();
+            push(keys, "");
+            for (var round = 0; round < 5; round = round + 1) {
+                var longer = list();
+                for (var i = 0; i < len(keys); i = i + 1) {
+                    for (var j = 0; j < 10; j = j + 1) push(longer, get(keys, i) + get(letters, j));
+                }
+                keys = longer;
+            }
+            var m = map();
+            for (var i = 0; i < len(keys); i = i + 1) set(m, get(keys, i), i);
+            var hits = 0;
+            for (var i = 0; i < len(keys); i = i + 1) if (get(m, get(keys, i)) == i) hits = hits + 1;
+            """;
+
+    public static void main(String[] args) {
+        double sum = NUMBERS * (NUMBERS - 1.0) / 2;
+        time("numbers ", LIST.formatted("", NUMBERS), "sum", sum);
+        time("promoted", LIST.formatted("push(l, \"first\");", NUMBERS), "sum", sum);
+        time("map     ", MAP, "hits", 100000.0);
+        System.out.printf("list of %,d: numbers %.1f MB, promoted %.1f MB%n", NUMBERS,
+                heap(false) / 1e6, heap(true) / 1e6);
+    }
+
+    private static void time(String name, String source, String result, double expected) {
+        List<Stmt> stmts = compile(source);
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            Interpreter interpreter = new Interpreter(new PrintStream(OutputStream.nullOutputStream()));
+            interpreter.run(stmts);
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            Object value = interpreter.globals.cell(SymbolTable.id(result)).value;
+            if (!Double.valueOf(expected).equals(value)) throw new IllegalStateException("Wrong " + result + ": " + value);
+        }
+        System.out.printf("%s: %.1f ms%n", name, best);
+    }
+
+    /**
+     * @return bytes of heap held by a list of NUMBERS numbers
+     */
+    private static long heap(boolean promoted) {
+        LoxList list = new LoxList();
+        if (promoted) list.push("first");
+        long before = used();
+        for (int i = 0; i < NUMBERS; i++) {
+            list.push((double) i);
+        }
+        long after = used();
+        if (list.size() < NUMBERS) throw new IllegalStateException();
+        return after - before;
+    }
+
+    private static long used() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<Stmt> compile(String source) {
+        char[] chars = source.toCharArray();
+        return Lox.compile(chars, chars.length, Lox.CONSOLE, false);
+    }
+}
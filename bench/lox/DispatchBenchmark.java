@@ -0,0 +1,82 @@
+package lox;
+
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Time for the same programs on the Visitor-based Interpreter (without the
+ * Jit) and on the RecordInterpreter, which dispatches with a pattern switch
+ * over sealed records. Both walk the same resolved tree, so the difference
+ * is mostly the cost of getting from a node to the code for it.
+ * Runs the given scripts, or a few built-in ones.
+ * <pre>
+ * java -cp out lox.DispatchBenchmark [script...]
+ * </pre>
+ */
+public class DispatchBenchmark {
+    private static final int WARMUP = 10;
+    private static final int RUNS = 20;
+
+    private static final Map<String, String> PROGRAMS = new LinkedHashMap<>();
+    static {
+        PROGRAMS.put("fib", """
+                fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+                var result = fib(27);
+                """);
+        PROGRAMS.put("loop", """
+                var total = 0;
+                var i = 0;
+                while (i < 1000000) {
+                    if (i - (i / 2) * 2 == 0 and i > 10) total = total + i; else total = total - 1;
+                    i = i + 1;
+                }
+                """);
+        PROGRAMS.put("closure", """
+                fun counter() { var n = 0; fun next() { n = n + 1; return n; } return next; }
+                var c = counter();
+                for (var i = 0; i < 300000; i = i + 1) { c(); }
+                """);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, List<Stmt>> programs = new LinkedHashMap<>();
+        if (args.length == 0) {
+            PROGRAMS.forEach((name, source) ->
+                    programs.put(name, Lox.compile(source.toCharArray(), source.length(), Lox.CONSOLE)));
+        }
+        for (String arg : args) {
+            CharBuffer source = Lox.readSource(Path.of(arg));
+            programs.put(arg, Lox.compile(source.array(), source.limit(), Lox.CONSOLE));
+        }
+
+        for (Map.Entry<String, List<Stmt>> program : programs.entrySet()) {
+            List<Stmt> stmts = program.getValue();
+            if (stmts == null) continue;
+            double visitor = time(Interpreter::new, stmts);
+            double records = time(RecordInterpreter::new, stmts);
+            System.out.printf("%s: visitor %.1f ms, records %.1f ms, records/visitor %.2f%n",
+                    program.getKey(), visitor, records, records / visitor);
+        }
+    }
+
+    /**
+     * @return best time in milliseconds to run the program on a fresh engine
+     */
+    private static double time(Supplier<Engine> engines, List<Stmt> stmts) {
+        for (int i = 0; i < WARMUP; i++) {
+            engines.get().interpret(stmts);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            Engine engine = engines.get();
+            long start = System.nanoTime();
+            engine.interpret(stmts);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+}
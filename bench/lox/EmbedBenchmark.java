@@ -0,0 +1,75 @@
+package lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of one shared LoxEngine.Program run in a fresh LoxContext over
+ * and over, by 1, 2, 4, ... threads up to the number of cores, to see how
+ * running contexts in parallel scales. Every run is checked for the right
+ * result, so a context seeing another's globals would show up.
+ * <pre>
+ * java -cp out lox.EmbedBenchmark
+ * </pre>
+ */
+public class EmbedBenchmark {
+    private static final long MILLIS = 2000;
+
+    private static final String SOURCE = """
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            var total = 0;
+            for (var i = 0; i < 2000; i = i + 1) total = total + i;
+            var greeting = "hello" + " " + "world";
+            print greeting;
+            var result = fib(15) + total;
+            """;
+    private static final double EXPECTED = 610 + 1999000;
+
+    public static void main(String[] args) throws Exception {
+        LoxEngine engine = new LoxEngine();
+        LoxEngine.Program program = engine.compile(SOURCE);
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+        runs(engine, program, discard, 1);
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int doubling = 1; doubling < cores * 2; doubling *= 2) {
+            int threads = Math.min(doubling, cores);
+            double perSecond = runs(engine, program, discard, threads) * 1000.0 / MILLIS;
+            if (threads == 1) single = perSecond;
+            System.out.printf("%d threads: %.0f runs/s, speedup %.2fx%n", threads, perSecond, perSecond / single);
+        }
+    }
+
+    /**
+     * @return runs completed by all the threads in MILLIS
+     */
+    private static long runs(LoxEngine engine, LoxEngine.Program program, PrintStream out, int threads)
+            throws InterruptedException {
+        AtomicLong runs = new AtomicLong();
+        long deadline = System.currentTimeMillis() + MILLIS;
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                long count = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    LoxContext context = engine.newContext(out, System.err);
+                    if (!context.run(program) || !Double.valueOf(EXPECTED).equals(context.get("result"))) {
+                        throw new IllegalStateException("Wrong result: " + context.get("result"));
+                    }
+                    count++;
+                }
+                runs.addAndGet(count);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return runs.get();
+    }
+}
@@ -0,0 +1,66 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Throughput of a ScriptExecutor running many small scripts, as a service
+ * would for its clients: a few dozen different sources, each submitted over
+ * and over with its own bindings. Run with the compiled Programs cached, and
+ * with every run compiling its source, to see what sharing them saves.
+ * Every result is checked, so runs seeing each other's globals would show up.
+ * <pre>
+ * java -cp out lox.ExecutorBenchmark
+ * </pre>
+ */
+public class ExecutorBenchmark {
+    private static final int SOURCES = 50;
+    private static final int RUNS = 20000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < SOURCES; i++) {
+            sources.add("""
+                    fun score(x) { if (x < 2) return x; return score(x - 1) + score(x - 2); }
+                    var total = 0;
+                    for (var i = 0; i < limit; i = i + 1) total = total + i * %d;
+                    print "client " + name;
+                    var result = total + score(10);
+                    """.formatted(i));
+        }
+
+        for (int cached : new int[] {256, 0}) {
+            double best = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                best = Math.max(best, runs(sources, cached));
+            }
+            System.out.printf("%s: %.0f scripts/s%n", cached > 0 ? "cached  " : "uncached", best);
+        }
+    }
+
+    /**
+     * @return scripts run per second
+     */
+    private static double runs(List<String> sources, int cached) throws Exception {
+        long start = System.nanoTime();
+        try (ScriptExecutor executor = new ScriptExecutor(1000, cached)) {
+            List<CompletableFuture<Void>> checks = new ArrayList<>(RUNS);
+            for (int i = 0; i < RUNS; i++) {
+                int source = i % SOURCES;
+                int limit = i % 100;
+                double expected = source * (limit * (limit - 1) / 2.0) + 55;
+                checks.add(executor.submit(sources.get(source), Map.of("limit", limit, "name", "c" + i))
+                        .thenAccept(result -> {
+                            if (!Double.valueOf(expected).equals(result.get("result"))) {
+                                throw new IllegalStateException("Wrong result: " + result.get("result"));
+                            }
+                        }));
+            }
+            CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).join();
+        }
+        return RUNS / ((System.nanoTime() - start) / 1e9);
+    }
+}
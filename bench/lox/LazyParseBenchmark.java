@@ -0,0 +1,61 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Time to the first statement of a 50k-line library, of which the program
+ * calls one function, when every body is parsed up front and with --lazy.
+ * Compiling covers scanning, parsing, optimizing and resolving; the first
+ * statement is the call, which is where a lazy body gets parsed. The first
+ * round is the cold start, so give a mode to run it in a fresh JVM; the best
+ * of the later rounds is with a warm JIT.
+ * <pre>
+ * java -cp out lox.LazyParseBenchmark [eager|lazy]
+ * </pre>
+ */
+public class LazyParseBenchmark {
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        char[] source = generate(5000).toCharArray();
+        boolean[] modes = args.length == 0 ? new boolean[] {false, true} : new boolean[] {args[0].equals("lazy")};
+        for (boolean lazy : modes) {
+            double cold = 0;
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                List<Stmt> stmts = compile(source, lazy);
+                new Interpreter().interpret(stmts);
+                double millis = (System.nanoTime() - start) / 1e6;
+                if (i == 0) cold = millis;
+                best = Math.min(best, millis);
+            }
+            System.out.printf("%s: cold %.1f ms, warm %.1f ms%n", lazy ? "lazy " : "eager", cold, best);
+        }
+    }
+
+    private static List<Stmt> compile(char[] source, boolean lazy) {
+        return Lox.compile(source, source.length, Lox.CONSOLE, lazy);
+    }
+
+    /**
+     * A library of ten-line functions, then a call to one of them.
+     */
+    private static String generate(int functions) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("fun f").append(i).append("(a, b) {\n")
+                    .append("    var total = 0;\n")
+                    .append("    var i = a;\n")
+                    .append("    while (i < b) {\n")
+                    .append("        if (i > 10 and total != nil) total = total + i * 2;\n")
+                    .append("        else total = total - 1;\n")
+                    .append("        i = i + 1;\n")
+                    .append("    }\n")
+                    .append("    return total;\n")
+                    .append("}\n");
+        }
+        source.append("var result = f").append(functions / 2).append("(1, 20);\n");
+        return source.toString();
+    }
+}
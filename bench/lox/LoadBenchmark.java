@@ -0,0 +1,63 @@
+package lox;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Time and peak heap for loading a script up to a ready Scanner.
+ * Run each mode in a fresh JVM, since peak heap usage can't be reset reliably:
+ * <pre>
+ * java -cp out lox.LoadBenchmark string big.lox   (readAllBytes, new String, toCharArray)
+ * java -cp out lox.LoadBenchmark mapped big.lox   (Lox.readSource)
+ * </pre>
+ */
+public class LoadBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: LoadBenchmark string|mapped <script>");
+            System.exit(64);
+        }
+        String mode = args[0];
+        Path path = Path.of(args[1]);
+
+        List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        System.gc();
+        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long before = heapUsed(heap);
+
+        long start = System.nanoTime();
+        Scanner scanner = switch (mode) {
+            case "string" -> new Scanner(new String(Files.readAllBytes(path), Charset.defaultCharset()));
+            case "mapped" -> {
+                CharBuffer source = Lox.readSource(path);
+                yield new Scanner(source.array(), source.limit());
+            }
+            default -> throw new IllegalArgumentException(mode);
+        };
+        long elapsed = System.nanoTime() - start;
+
+        long peak = heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() - before;
+        System.out.printf("%s: load %.1f ms, peak heap +%d MB, peak RSS %s%n",
+                mode, elapsed / 1e6, peak >> 20, peakRss());
+        if (scanner.hashCode() == 0) System.out.println();
+    }
+
+    private static long heapUsed(List<MemoryPoolMXBean> heap) {
+        return heap.stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+    }
+
+    private static String peakRss() throws Exception {
+        for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+            if (line.startsWith("VmHWM:")) return line.substring("VmHWM:".length()).trim();
+        }
+        return "n/a";
+    }
+}
@@ -0,0 +1,66 @@
+package lox;
+
+import java.util.Random;
+
+/**
+ * Time per edit for an IncrementalParser, against compiling the whole buffer
+ * again, for generated files of growing size. Each edit types or deletes a
+ * char inside a function body somewhere in the file, like a user would.
+ * <pre>
+ * java -cp out lox.ReparseBenchmark
+ * </pre>
+ */
+public class ReparseBenchmark {
+    private static final int EDITS = 2000;
+
+    public static void main(String[] args) {
+        for (int functions = 1000; functions <= 100000; functions *= 10) {
+            String source = generate(functions);
+            IncrementalParser parser = new IncrementalParser(source);
+            Random random = new Random(42);
+
+            // Warm up with the same kind of edits, then time them.
+            edit(parser, random, EDITS);
+            long start = System.nanoTime();
+            edit(parser, random, EDITS);
+            double incremental = (System.nanoTime() - start) / 1e3 / EDITS;
+
+            start = System.nanoTime();
+            int full = 0;
+            for (int i = 0; i < 5; i++) {
+                String text = parser.text();
+                full += Lox.compile(text.toCharArray(), text.length(), new ErrorLog()).size();
+            }
+            double reparse = (System.nanoTime() - start) / 1e3 / 5;
+
+            System.out.printf("%d functions, %d KB: edit %.1f us, full compile %.0f us (%d stmts)%n",
+                    functions, source.length() >> 10, incremental, reparse, full / 5);
+        }
+    }
+
+    /**
+     * Inserts a digit into the literal of a random function and takes it out again.
+     */
+    private static void edit(IncrementalParser parser, Random random, int count) {
+        String text = parser.text();
+        for (int i = 0; i < count; i += 2) {
+            int offset = text.indexOf("+ 1", random.nextInt(text.length() - 10)) + 2;
+            if (offset < 2) offset = text.indexOf("+ 1") + 2;
+            parser.edit(offset, 0, "7");
+            parser.edit(offset, 1, "");
+        }
+        if (!parser.errors().isEmpty()) throw new IllegalStateException(parser.errors().toString());
+    }
+
+    private static String generate(int functions) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("fun f").append(i).append("(a, b) {\n")
+                    .append("    var total = a;\n")
+                    .append("    while (total < b) total = total + 1;\n")
+                    .append("    return total;\n")
+                    .append("}\n");
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Time to build a string of n pieces with s = s + "x" in a loop and print
+ * it, for growing n, on the tree-walking Interpreter. With + copying both
+ * sides the time grows with n squared; with Ropes it should grow with n,
+ * so the time per piece stays flat.
+ * <pre>
+ * java -cp out lox.RopeBenchmark
+ * </pre>
+ */
+public class RopeBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (int pieces = 10_000; pieces <= 1_000_000; pieces *= 10) {
+            String source = """
+                    var s = "";
+                    for (var i = 0; i < %d; i = i + 1) s = s + "x";
+                    print s;
+                    """.formatted(pieces);
+            char[] chars = source.toCharArray();
+            List<Stmt> stmts = Lox.compile(chars, chars.length, Lox.CONSOLE, false);
+
+            double best = Double.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                new Interpreter(discard).interpret(stmts);
+                best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            }
+            System.out.printf("%,9d pieces: %8.1f ms, %6.1f ns per piece%n", pieces, best, best * 1e6 / pieces);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package lox;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Scanner throughput in MB/s of source (counted as chars).
+ * Scans the given script, or a generated one with a mix of keywords,
+ * identifiers, numbers and strings, several times after a warm-up.
+ * <pre>
+ * java -cp out lox.ScannerBenchmark [script]
+ * </pre>
+ */
+public class ScannerBenchmark {
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        char[] source = args.length > 0
+                ? Files.readString(Path.of(args[0])).toCharArray()
+                : generate(200_000).toCharArray();
+        double megabytes = source.length / (1024.0 * 1024.0);
+
+        for (int i = 0; i < WARMUP; i++) {
+            new Scanner(source).scan();
+        }
+
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        int tokens = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            tokens = new Scanner(source).scan().size();
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+
+        System.out.printf("%.1f MB, %d tokens: best %.1f MB/s, mean %.1f MB/s%n",
+                megabytes, tokens, megabytes / (best / 1e9), megabytes / (total / 1e9 / RUNS));
+    }
+
+    /**
+     * Source shaped like generated scripts: many small functions over a few
+     * hundred distinct names.
+     */
+    private static String generate(int functions) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            int n = i % 300;
+            source.append("fun handler").append(n).append("(value, count) {\n")
+                    .append("    var total = 0;\n")
+                    .append("    for (var i = 0; i < count; i = i + 1) {\n")
+                    .append("        if (value != nil and i >= ").append(n).append(") total = total + value * 2.5;\n")
+                    .append("        else print \"skip ").append(n).append("\";\n")
+                    .append("    }\n")
+                    .append("    while (true) { if (total > 100 or false) break; total = total + 1; }\n")
+                    .append("    return total;\n")
+                    .append("}\n");
+        }
+        return source.toString();
+    }
+}
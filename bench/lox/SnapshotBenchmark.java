@@ -0,0 +1,74 @@
+package lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Startup cost per request when every request first runs a prelude of library
+ * functions and constants, against forking the globals from a snapshot taken
+ * once after the prelude. The request calls into the library, then overwrites
+ * a constant and a function, and each result is checked, so a fork that saw
+ * an earlier request's changes would show up.
+ * <pre>
+ * java -cp out lox.SnapshotBenchmark
+ * </pre>
+ */
+public class SnapshotBenchmark {
+    private static final int FUNCTIONS = 300;
+    private static final int CONSTANTS = 200;
+    private static final int REQUESTS = 20000;
+    private static final int ROUNDS = 5;
+
+    private static final String REQUEST = """
+            var result = f7(c3) + f150(c199);
+            c3 = 1000;
+            fun f7(x) { return 0; }
+            """;
+    private static final double EXPECTED = (3 + 7) + (199 + 150);
+
+    public static void main(String[] args) {
+        LoxEngine engine = new LoxEngine();
+        LoxEngine.Program prelude = engine.compile(prelude());
+        LoxEngine.Program request = engine.compile(REQUEST);
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+        LoxContext library = engine.newContext(discard, discard);
+        library.run(prelude);
+        GlobalSnapshot snapshot = library.snapshot();
+
+        for (boolean fork : new boolean[] {false, true}) {
+            double best = Double.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < REQUESTS; i++) {
+                    LoxContext context;
+                    if (fork) {
+                        context = engine.newContext(snapshot, discard, discard);
+                    } else {
+                        context = engine.newContext(discard, discard);
+                        context.run(prelude);
+                    }
+                    if (!context.run(request) || !Double.valueOf(EXPECTED).equals(context.get("result"))) {
+                        throw new IllegalStateException("Wrong result: " + context.get("result"));
+                    }
+                }
+                best = Math.min(best, (System.nanoTime() - start) / 1e3 / REQUESTS);
+            }
+            System.out.printf("%s: %.1f us per request%n", fork ? "fork   " : "prelude", best);
+        }
+    }
+
+    /**
+     * Functions fN(x) returning x + N, and constants cN holding N.
+     */
+    private static String prelude() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < FUNCTIONS; i++) {
+            source.append("fun f").append(i).append("(x) { var y = x + ").append(i).append("; return y; }\n");
+        }
+        for (int i = 0; i < CONSTANTS; i++) {
+            source.append("var c").append(i).append(" = ").append(i).append(";\n");
+        }
+        return source.toString();
+    }
+}
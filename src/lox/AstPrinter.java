@@ -0,0 +1,159 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Prints the syntax tree as S-expressions, one statement per line, with
+ * nested statements indented. Used by --dump-ast to check what the Optimizer did.
+ */
+public class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
+    private int indent = 0;
+
+    String print(List<Stmt> stmts) {
+        StringBuilder builder = new StringBuilder();
+        for (Stmt stmt : stmts) {
+            builder.append(print(stmt));
+        }
+        return builder.toString();
+    }
+
+    private String print(Stmt stmt) {
+        return "  ".repeat(indent) + stmt.accept(this) + System.lineSeparator();
+    }
+
+    private String print(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private String nested(String head, List<Stmt> stmts) {
+        StringBuilder builder = new StringBuilder("(" + head + System.lineSeparator());
+        indent++;
+        for (Stmt stmt : stmts) {
+            builder.append(print(stmt));
+        }
+        indent--;
+        return builder.append("  ".repeat(indent)).append(")").toString();
+    }
+
+    private String parenthesize(String name, Expr... exprs) {
+        StringBuilder builder = new StringBuilder("(").append(name);
+        for (Expr expr : exprs) {
+            builder.append(" ").append(print(expr));
+        }
+        return builder.append(")").toString();
+    }
+
+    @Override
+    public String visitAssignExpr(Expr.Assign expr) {
+        return parenthesize("= " + expr.name.lexeme, expr.value);
+    }
+
+    @Override
+    public String visitBinaryExpr(Expr.Binary expr) {
+        return parenthesize(expr.op.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        Expr[] exprs = new Expr[expr.args.size() + 1];
+        exprs[0] = expr.callee;
+        for (int i = 0; i < expr.args.size(); i++) {
+            exprs[i + 1] = expr.args.get(i);
+        }
+        return parenthesize("call", exprs);
+    }
+
+    @Override
+    public String visitGroupingExpr(Expr.Grouping expr) {
+        return parenthesize("group", expr.expression);
+    }
+
+    @Override
+    public String visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof String s) return "\"" + s + "\"";
+        return Interpreter.stringify(expr.value);
+    }
+
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        return parenthesize(expr.op.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visitUnaryExpr(Expr.Unary expr) {
+        return parenthesize(expr.op.lexeme, expr.right);
+    }
+
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return name(expr.name);
+    }
+
+    /**
+     * Names the Optimizer made up contain a space; they are shown in angle brackets.
+     */
+    private static String name(Token name) {
+        return name.lexeme.contains(" ") ? "<" + name.lexeme + ">" : name.lexeme;
+    }
+
+    @Override
+    public String visitBlockStmt(Stmt.Block stmt) {
+        return nested("block", stmt.statements);
+    }
+
+    @Override
+    public String visitExpressionStmt(Stmt.Expression stmt) {
+        return parenthesize(";", stmt.expression);
+    }
+
+    @Override
+    public String visitFunctionStmt(Stmt.Function stmt) {
+        StringBuilder head = new StringBuilder("fun " + stmt.name.lexeme + " (");
+        for (int i = 0; i < stmt.params.size(); i++) {
+            if (i > 0) head.append(" ");
+            head.append(stmt.params.get(i).lexeme);
+        }
+        return nested(head.append(")").toString(), stmt.body);
+    }
+
+    @Override
+    public String visitIfStmt(Stmt.If stmt) {
+        indent++;
+        String thenBranch = print(stmt.thenBranch);
+        String elseBranch = stmt.elseBranch == null ? "" : print(stmt.elseBranch);
+        indent--;
+        return "(if " + print(stmt.condition) + System.lineSeparator() + thenBranch + elseBranch
+                + "  ".repeat(indent) + ")";
+    }
+
+    @Override
+    public String visitPrintStmt(Stmt.Print stmt) {
+        return parenthesize("print", stmt.expression);
+    }
+
+    @Override
+    public String visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return "(return)";
+        return parenthesize("return", stmt.value);
+    }
+
+    @Override
+    public String visitVarStmt(Stmt.Var stmt) {
+        String name = name(stmt.name);
+        if (stmt.initializer == null) return "(var " + name + ")";
+        return parenthesize("var " + name, stmt.initializer);
+    }
+
+    @Override
+    public String visitWhileStmt(Stmt.While stmt) {
+        indent++;
+        String body = print(stmt.body);
+        indent--;
+        return "(while " + print(stmt.condition) + System.lineSeparator() + body + "  ".repeat(indent) + ")";
+    }
+
+    @Override
+    public String visitBreakStmt(Stmt.Break stmt) {
+        return "(break)";
+    }
+}
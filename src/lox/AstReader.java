@@ -0,0 +1,184 @@
+package lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static lox.AstWriter.*;
+
+/**
+ * Rebuilds a syntax tree written by AstWriter, Resolver annotations included,
+ * so it can run without being scanned, parsed or resolved again.
+ * A truncated or corrupt tree makes it throw an unchecked exception.
+ */
+final class AstReader {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final ByteBuffer in;
+    private final List<String> strings = new ArrayList<>();
+    private int[] symbols = new int[64];
+
+    AstReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    List<Stmt> read() {
+        List<Stmt> stmts = stmtList();
+        if (in.hasRemaining()) throw new IllegalStateException("Trailing bytes after tree");
+        return stmts;
+    }
+
+    private List<Stmt> stmtList() {
+        int size = readInt();
+        List<Stmt> stmts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stmts.add(stmt());
+        }
+        return stmts;
+    }
+
+    private int readInt() {
+        int zigzag = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            zigzag |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private Token token() {
+        TokenType type = TYPES[in.get()];
+        int index = stringIndex();
+        int symbol = type == TokenType.IDENTIFIER ? symbol(index) : -1;
+        return new Token(type, strings.get(index), null, readInt(), symbol);
+    }
+
+    private String string() {
+        return strings.get(stringIndex());
+    }
+
+    /**
+     * @return index of the next string, read in full if this is its first use
+     */
+    private int stringIndex() {
+        int index = readInt();
+        if (index >= 0) return index;
+
+        byte[] bytes = new byte[readInt()];
+        in.get(bytes);
+        strings.add(new String(bytes, StandardCharsets.UTF_8));
+        return strings.size() - 1;
+    }
+
+    /**
+     * @return SymbolTable ID of the name at a string index, asked for only once
+     */
+    private int symbol(int index) {
+        if (index >= symbols.length) symbols = Arrays.copyOf(symbols, Math.max(symbols.length * 2, index + 1));
+        // 0 means no ID yet; IDs are stored plus one.
+        if (symbols[index] == 0) symbols[index] = SymbolTable.id(strings.get(index)) + 1;
+        return symbols[index] - 1;
+    }
+
+    private Expr expr() {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case ASSIGN: {
+                Expr.Assign expr = new Expr.Assign(token(), expr());
+                expr.depth = readInt();
+                expr.slot = readInt();
+                return expr;
+            }
+            case BINARY:
+                return new Expr.Binary(expr(), token(), expr());
+            case CALL: {
+                Expr callee = expr();
+                Token paren = token();
+                int argc = readInt();
+                List<Expr> args = new ArrayList<>(argc);
+                for (int i = 0; i < argc; i++) {
+                    args.add(expr());
+                }
+                return new Expr.Call(callee, paren, args);
+            }
+            case GROUPING:
+                return new Expr.Grouping(expr());
+            case LITERAL:
+                return new Expr.Literal(literal());
+            case LOGICAL:
+                return new Expr.Logical(expr(), token(), expr());
+            case UNARY:
+                return new Expr.Unary(token(), expr());
+            case VARIABLE: {
+                Expr.Variable expr = new Expr.Variable(token());
+                expr.depth = readInt();
+                expr.slot = readInt();
+                return expr;
+            }
+            default:
+                throw new IllegalStateException("Unknown expression tag " + tag);
+        }
+    }
+
+    private Object literal() {
+        byte kind = in.get();
+        return switch (kind) {
+            case NIL -> null;
+            case TRUE -> true;
+            case FALSE -> false;
+            case NUMBER -> Double.longBitsToDouble(in.getLong());
+            case STRING -> string();
+            default -> throw new IllegalStateException("Unknown literal kind " + kind);
+        };
+    }
+
+    private Stmt stmt() {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case BLOCK: {
+                Stmt.Block stmt = new Stmt.Block(stmtList());
+                stmt.locals = readInt();
+                return stmt;
+            }
+            case EXPRESSION:
+                return new Stmt.Expression(expr());
+            case FUNCTION: {
+                Token name = token();
+                int arity = readInt();
+                List<Token> params = new ArrayList<>(arity);
+                for (int i = 0; i < arity; i++) {
+                    params.add(token());
+                }
+                Stmt.Function stmt = new Stmt.Function(name, params, stmtList());
+                stmt.slot = readInt();
+                stmt.locals = readInt();
+                stmt.declaresFunctions = in.get() != 0;
+                return stmt;
+            }
+            case IF:
+                return new Stmt.If(expr(), stmt(), stmt());
+            case PRINT:
+                return new Stmt.Print(expr());
+            case RETURN:
+                return new Stmt.Return(token(), expr());
+            case VAR: {
+                Stmt.Var stmt = new Stmt.Var(token(), expr());
+                stmt.slot = readInt();
+                return stmt;
+            }
+            case WHILE:
+                return new Stmt.While(expr(), stmt());
+            case BREAK:
+                return new Stmt.Break(token());
+            default:
+                throw new IllegalStateException("Unknown statement tag " + tag);
+        }
+    }
+}
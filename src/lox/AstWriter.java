@@ -0,0 +1,270 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes a resolved syntax tree for the ScriptCache; AstReader reads it back.
+ * Each node is a tag byte followed by its fields in declaration order, then
+ * the annotations the Resolver added. Strings are written once and referred
+ * to by index afterwards, since the same names and operators recur all over.
+ * Ints are zigzag varints, as most are small and some are -1.
+ * Tokens in the tree never have a literal, so only type, lexeme and line are kept.
+ */
+final class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    static final byte NULL = 0;
+    static final byte ASSIGN = 1;
+    static final byte BINARY = 2;
+    static final byte CALL = 3;
+    static final byte GROUPING = 4;
+    static final byte LITERAL = 5;
+    static final byte LOGICAL = 6;
+    static final byte UNARY = 7;
+    static final byte VARIABLE = 8;
+    static final byte BLOCK = 9;
+    static final byte EXPRESSION = 10;
+    static final byte FUNCTION = 11;
+    static final byte IF = 12;
+    static final byte PRINT = 13;
+    static final byte RETURN = 14;
+    static final byte VAR = 15;
+    static final byte WHILE = 16;
+    static final byte BREAK = 17;
+
+    static final byte NIL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte NUMBER = 3;
+    static final byte STRING = 4;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    byte[] write(List<Stmt> stmts) {
+        stmtList(stmts);
+        return out.toByteArray();
+    }
+
+    private void stmtList(List<Stmt> stmts) {
+        writeInt(stmts.size());
+        for (Stmt stmt : stmts) {
+            stmt(stmt);
+        }
+    }
+
+    private void stmt(Stmt stmt) {
+        if (stmt == null) {
+            out.write(NULL);
+        } else {
+            stmt.accept(this);
+        }
+    }
+
+    private void expr(Expr expr) {
+        if (expr == null) {
+            out.write(NULL);
+        } else {
+            expr.accept(this);
+        }
+    }
+
+    private void token(Token token) {
+        out.write(token.type.ordinal());
+        string(token.lexeme);
+        writeInt(token.line);
+    }
+
+    /**
+     * Writes the index of a string already written, or -1 and the string itself.
+     */
+    private void string(String string) {
+        Integer index = strings.get(string);
+        if (index != null) {
+            writeInt(index);
+            return;
+        }
+        strings.put(string, strings.size());
+        writeInt(-1);
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private void writeInt(int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.write((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.write(zigzag);
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        out.write(ASSIGN);
+        token(expr.name);
+        expr(expr.value);
+        writeInt(expr.depth);
+        writeInt(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        out.write(BINARY);
+        expr(expr.left);
+        token(expr.op);
+        expr(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        out.write(CALL);
+        expr(expr.callee);
+        token(expr.paren);
+        writeInt(expr.args.size());
+        for (Expr arg : expr.args) {
+            expr(arg);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        out.write(GROUPING);
+        expr(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        out.write(LITERAL);
+        Object value = expr.value;
+        if (value == null) {
+            out.write(NIL);
+        } else if (value instanceof Boolean b) {
+            out.write(b ? TRUE : FALSE);
+        } else if (value instanceof Double d) {
+            out.write(NUMBER);
+            writeLong(Double.doubleToRawLongBits(d));
+        } else {
+            out.write(STRING);
+            string((String) value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        out.write(LOGICAL);
+        expr(expr.left);
+        token(expr.op);
+        expr(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        out.write(UNARY);
+        token(expr.op);
+        expr(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        out.write(VARIABLE);
+        token(expr.name);
+        writeInt(expr.depth);
+        writeInt(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        out.write(BLOCK);
+        stmtList(stmt.statements);
+        writeInt(stmt.locals);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        out.write(EXPRESSION);
+        expr(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        out.write(FUNCTION);
+        token(stmt.name);
+        writeInt(stmt.params.size());
+        for (Token param : stmt.params) {
+            token(param);
+        }
+        stmtList(stmt.body);
+        writeInt(stmt.slot);
+        writeInt(stmt.locals);
+        out.write(stmt.declaresFunctions ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        out.write(IF);
+        expr(stmt.condition);
+        stmt(stmt.thenBranch);
+        stmt(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        out.write(PRINT);
+        expr(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        out.write(RETURN);
+        token(stmt.keyword);
+        expr(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        out.write(VAR);
+        token(stmt.name);
+        expr(stmt.initializer);
+        writeInt(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        out.write(WHILE);
+        expr(stmt.condition);
+        stmt(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        out.write(BREAK);
+        token(stmt.self);
+        return null;
+    }
+}
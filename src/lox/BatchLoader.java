@@ -0,0 +1,70 @@
+package lox;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Compiles many scripts at once, one ForkJoinPool task per file.
+ * Every file gets its own Scanner, Parser, Optimizer and Resolver, and its
+ * own ErrorLog instead of Lox.hadError, so the only state the tasks share is
+ * the SymbolTable. Units come back in the order the files were given, so
+ * running them one after another is deterministic however the tasks ran.
+ */
+final class BatchLoader {
+    /**
+     * One compiled file.
+     * @param stmts statements ready to run, or null if the file had errors
+     * @param errors compile errors, formatted as Lox.CONSOLE prints them
+     */
+    record Unit(Path path, List<Stmt> stmts, List<String> errors) { }
+
+    private final ForkJoinPool pool;
+
+    BatchLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    BatchLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return a unit for every path, in the same order
+     * @throws IOException if a file can't be read; the first such file in order wins
+     */
+    List<Unit> load(List<Path> paths) throws IOException {
+        List<ForkJoinTask<Unit>> tasks = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            tasks.add(pool.submit(() -> load(path)));
+        }
+
+        List<Unit> units = new ArrayList<>(paths.size());
+        for (ForkJoinTask<Unit> task : tasks) {
+            try {
+                units.add(task.get());
+            } catch (ExecutionException e) {
+                // The pool wraps checked exceptions thrown by a task, maybe more than once.
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IOException io) throw io;
+                }
+                throw new IllegalStateException("Compiling failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while loading scripts");
+            }
+        }
+        return units;
+    }
+
+    private static Unit load(Path path) throws IOException {
+        ErrorLog errors = new ErrorLog();
+        List<Stmt> stmts = Lox.load(path, errors);
+        return new Unit(path, stmts, errors.messages());
+    }
+}
@@ -0,0 +1,261 @@
+package lox;
+
+/**
+ * Self-specializing binary operator for the closure-compiling engine.
+ * A site starts out uninitialized. The first evaluation looks at the operand
+ * types and rewrites the site into a number-number or string-string
+ * specialization. From then on only that case is tested. If its guard ever
+ * fails, the site falls back to the generic case for good.
+ * This is the state machine a Truffle DSL node is built around.
+ */
+abstract class BinaryNode implements ClosureCompiler.Node {
+    static final byte UNINITIALIZED = 0;
+    static final byte DOUBLES = 1;
+    static final byte STRINGS = 2;
+    static final byte GENERIC = 3;
+
+    private final ClosureCompiler.Node left;
+    private final ClosureCompiler.Node right;
+    final Token op;
+    byte state = UNINITIALIZED;
+    int deopts = 0;
+
+    private BinaryNode(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+        this.op = op;
+        this.left = left;
+        this.right = right;
+    }
+
+    static BinaryNode create(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+        return switch (op.type) {
+            case PLUS -> new Add(op, left, right);
+            case MINUS -> new Subtract(op, left, right);
+            case STAR -> new Multiply(op, left, right);
+            case SLASH -> new Divide(op, left, right);
+            case LESS -> new Less(op, left, right);
+            case LESS_EQUAL -> new LessEqual(op, left, right);
+            case GREATER -> new Greater(op, left, right);
+            case GREATER_EQUAL -> new GreaterEqual(op, left, right);
+            case EQUAL_EQUAL -> new Equal(op, left, right);
+            case BANG_EQUAL -> new NotEqual(op, left, right);
+            default -> throw new IllegalArgumentException("Not a binary operator: " + op.type);
+        };
+    }
+
+    @Override
+    public final Object eval(Environment env) {
+        Object l = left.eval(env);
+        Object r = right.eval(env);
+
+        switch (state) {
+            case DOUBLES -> {
+                if (l instanceof Double a && r instanceof Double b) return doubles(a, b);
+            }
+            case STRINGS -> {
+                if (l instanceof CharSequence a && r instanceof CharSequence b) return strings(a, b);
+            }
+            case GENERIC -> {
+                return generic(l, r);
+            }
+        }
+        return specialize(l, r);
+    }
+
+    /**
+     * Slow path: either the first evaluation or a failed guard.
+     */
+    private Object specialize(Object l, Object r) {
+        if (state == UNINITIALIZED) {
+            if (l instanceof Double && r instanceof Double) {
+                state = DOUBLES;
+            } else if (l instanceof CharSequence && r instanceof CharSequence && acceptsStrings()) {
+                state = STRINGS;
+            } else {
+                state = GENERIC;
+            }
+        } else {
+            deopts++;
+            state = GENERIC;
+        }
+        return generic(l, r);
+    }
+
+    abstract Object doubles(double a, double b);
+
+    Object strings(CharSequence a, CharSequence b) {
+        throw new IllegalStateException("Not specialized for strings: " + op.type);
+    }
+
+    boolean acceptsStrings() {
+        return false;
+    }
+
+    /**
+     * Full semantics of the operator, including its type errors.
+     */
+    Object generic(Object l, Object r) {
+        if (l instanceof Double a && r instanceof Double b) return doubles(a, b);
+        throw new RuntimeError(op, "Operands must be a number.");
+    }
+
+    private static final class Add extends BinaryNode {
+        Add(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return a + b;
+        }
+
+        @Override
+        Object strings(CharSequence a, CharSequence b) {
+            if (!Rope.fits(a, b)) throw new RuntimeError(op, Rope.TOO_LONG);
+            return Rope.concat(a, b);
+        }
+
+        @Override
+        boolean acceptsStrings() {
+            return true;
+        }
+
+        @Override
+        Object generic(Object l, Object r) {
+            if (l instanceof Double a && r instanceof Double b) return a + b;
+            if (l instanceof CharSequence a && r instanceof CharSequence b) return strings(a, b);
+            throw new RuntimeError(op, "Operands must be two integers or strings");
+        }
+    }
+
+    private static final class Subtract extends BinaryNode {
+        Subtract(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return a - b;
+        }
+    }
+
+    private static final class Multiply extends BinaryNode {
+        Multiply(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return a * b;
+        }
+    }
+
+    private static final class Divide extends BinaryNode {
+        Divide(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return a / b;
+        }
+    }
+
+    private static final class Less extends BinaryNode {
+        Less(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return a < b;
+        }
+    }
+
+    private static final class LessEqual extends BinaryNode {
+        LessEqual(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return a <= b;
+        }
+    }
+
+    private static final class Greater extends BinaryNode {
+        Greater(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return a > b;
+        }
+    }
+
+    private static final class GreaterEqual extends BinaryNode {
+        GreaterEqual(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return a >= b;
+        }
+    }
+
+    /**
+     * Numbers compare like Double.equals, which is what isEqual does for them.
+     */
+    private static final class Equal extends BinaryNode {
+        Equal(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+        }
+
+        @Override
+        Object strings(CharSequence a, CharSequence b) {
+            return Interpreter.isEqual(a, b);
+        }
+
+        @Override
+        boolean acceptsStrings() {
+            return true;
+        }
+
+        @Override
+        Object generic(Object l, Object r) {
+            return Interpreter.isEqual(l, r);
+        }
+    }
+
+    private static final class NotEqual extends BinaryNode {
+        NotEqual(Token op, ClosureCompiler.Node left, ClosureCompiler.Node right) {
+            super(op, left, right);
+        }
+
+        @Override
+        Object doubles(double a, double b) {
+            return Double.doubleToLongBits(a) != Double.doubleToLongBits(b);
+        }
+
+        @Override
+        Object strings(CharSequence a, CharSequence b) {
+            return !Interpreter.isEqual(a, b);
+        }
+
+        @Override
+        boolean acceptsStrings() {
+            return true;
+        }
+
+        @Override
+        Object generic(Object l, Object r) {
+            return !Interpreter.isEqual(l, r);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled sequence of bytecode together with its constant pool and line table.
+ * The line table is run-length encoded: pairs of (first offset, line), one pair
+ * per change of line, since most lines span several instructions.
+ */
+final class Chunk {
+    byte[] code = new byte[64];
+    int count = 0;
+    Object[] constants;
+    long[] constantBits;
+
+    private final List<Object> constantPool = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private int[] lines = new int[16];
+    private int lineCount = 0;
+
+    void write(byte b, int line) {
+        if (count == code.length) code = Arrays.copyOf(code, count * 2);
+        code[count] = b;
+
+        if (lineCount == 0 || lines[lineCount - 1] != line) {
+            if (lineCount + 2 > lines.length) lines = Arrays.copyOf(lines, lines.length * 2);
+            lines[lineCount++] = count;
+            lines[lineCount++] = line;
+        }
+        count++;
+    }
+
+    /**
+     * Adds a value to the constant pool, reusing an equal entry if one exists.
+     * @return index of the constant
+     */
+    int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+        constantPool.add(value);
+        constantIndex.put(value, constantPool.size() - 1);
+        return constantPool.size() - 1;
+    }
+
+    /**
+     * Freezes the chunk once compilation is done.
+     * Constants are also stored as NanBox bits, so loading a number needs no unboxing.
+     */
+    void finish() {
+        code = Arrays.copyOf(code, count);
+        constants = constantPool.toArray();
+        constantBits = new long[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            constantBits[i] = NanBox.unbox(constants[i]);
+        }
+    }
+
+    int getLine(int offset) {
+        int line = 0;
+        for (int i = 0; i < lineCount && lines[i] <= offset; i += 2) {
+            line = lines[i + 1];
+        }
+        return line;
+    }
+}
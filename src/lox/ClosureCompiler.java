@@ -0,0 +1,351 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static lox.Completion.*;
+
+/**
+ * Engine that compiles the tree once into pre-bound Java lambdas, selected with
+ * --engine=closure.
+ * Every decision that only depends on the tree, such as which operator a Binary
+ * is or whether a variable is global, is made here instead of on every
+ * evaluation, and there is no accept/visit double dispatch at run time.
+ * Each lambda's call sites only ever see the few node shapes below them, which
+ * lets the JIT inline through them.
+ */
+public class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Node>,
+        Stmt.Visitor<ClosureCompiler.Action>, Engine {
+
+    /**
+     * A compiled expression.
+     */
+    @FunctionalInterface
+    interface Node {
+        Object eval(Environment env);
+    }
+
+    /**
+     * A compiled statement.
+     */
+    @FunctionalInterface
+    interface Action {
+        Completion exec(Environment env);
+    }
+
+    private final Environment globals = new Environment();
+    private final List<BinaryNode> binarySites = new ArrayList<>();
+    private Object returnValue;
+
+    public ClosureCompiler() {
+        Interpreter.defineNatives(globals);
+    }
+
+    @Override
+    public void interpret(List<Stmt> stmts) {
+        Action[] program = compile(stmts);
+        try {
+            for (Action action : program) {
+                action.exec(globals);
+            }
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    /**
+     * Summarizes the type feedback of every binary operator site compiled so far.
+     * Number and string sites have stayed monomorphic; generic sites either saw
+     * mixed types first or had a specialization fail (a deopt).
+     * @return one line per state
+     */
+    String specializationReport() {
+        int[] counts = new int[4];
+        int deopts = 0;
+        for (BinaryNode site : binarySites) {
+            counts[site.state]++;
+            deopts += site.deopts;
+        }
+
+        return "binary sites: " + binarySites.size() + System.lineSeparator() +
+                "  number-number:  " + counts[BinaryNode.DOUBLES] + System.lineSeparator() +
+                "  string-string:  " + counts[BinaryNode.STRINGS] + System.lineSeparator() +
+                "  generic:        " + counts[BinaryNode.GENERIC] +
+                " (" + deopts + " deopts)" + System.lineSeparator() +
+                "  never executed: " + counts[BinaryNode.UNINITIALIZED];
+    }
+
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    private Node compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Action compile(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Action[] compile(List<Stmt> stmts) {
+        Action[] actions = new Action[stmts.size()];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = compile(stmts.get(i));
+        }
+        return actions;
+    }
+
+    @Override
+    public Node visitAssignExpr(Expr.Assign expr) {
+        Node value = compile(expr.value);
+        Token name = expr.name;
+
+        if (expr.depth < 0) {
+            Global global = globals.cell(name.symbol);
+            return env -> {
+                Object v = value.eval(env);
+                global.assign(name, v);
+                return v;
+            };
+        }
+
+        int depth = expr.depth;
+        int slot = expr.slot;
+        return env -> {
+            Object v = value.eval(env);
+            env.assignAt(depth, slot, v);
+            return v;
+        };
+    }
+
+    /**
+     * Operator choice is made here; operand types are left to the site itself,
+     * which specializes on what it sees at run time.
+     */
+    @Override
+    public Node visitBinaryExpr(Expr.Binary expr) {
+        BinaryNode site = BinaryNode.create(expr.op, compile(expr.left), compile(expr.right));
+        binarySites.add(site);
+        return site;
+    }
+
+    @Override
+    public Node visitCallExpr(Expr.Call expr) {
+        Node callee = compile(expr.callee);
+        Node[] args = new Node[expr.args.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = compile(expr.args.get(i));
+        }
+        Token paren = expr.paren;
+
+        return env -> {
+            Object function = callee.eval(env);
+            Object[] values = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                values[i] = args[i].eval(env);
+            }
+
+            if (!(function instanceof LoxCallable callable)) {
+                throw new RuntimeError(paren, "Can only call functions and classes");
+            }
+            if (values.length != callable.arity()) {
+                throw new RuntimeError(paren, "Expected " + callable.arity() +
+                        " args, but got " + values.length + " args.");
+            }
+
+            if (callable instanceof ClosureFunction closure) {
+                return closure.invoke(values);
+            }
+            try {
+                return callable.call(null, Arrays.asList(values));
+            } catch (NativeError error) {
+                throw new RuntimeError(paren, error.getMessage());
+            }
+        };
+    }
+
+    @Override
+    public Node visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Node visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return env -> value;
+    }
+
+    @Override
+    public Node visitLogicalExpr(Expr.Logical expr) {
+        Node left = compile(expr.left);
+        Node right = compile(expr.right);
+
+        if (expr.op.type == TokenType.OR) {
+            return env -> {
+                Object l = left.eval(env);
+                return Interpreter.isTruthLike(l) ? l : right.eval(env);
+            };
+        }
+        return env -> {
+            Object l = left.eval(env);
+            return Interpreter.isTruthLike(l) ? right.eval(env) : l;
+        };
+    }
+
+    @Override
+    public Node visitUnaryExpr(Expr.Unary expr) {
+        Node right = compile(expr.right);
+        Token op = expr.op;
+
+        if (op.type == TokenType.MINUS) {
+            return env -> {
+                if (right.eval(env) instanceof Double d) return -d;
+                throw new RuntimeError(op, "Operand must be a number.");
+            };
+        }
+        return env -> !Interpreter.isTruthLike(right.eval(env));
+    }
+
+    @Override
+    public Node visitVariableExpr(Expr.Variable expr) {
+        Token name = expr.name;
+        if (expr.depth < 0) {
+            Global global = globals.cell(name.symbol);
+            return env -> global.get(name);
+        }
+
+        int depth = expr.depth;
+        int slot = expr.slot;
+        return env -> env.getAt(depth, slot);
+    }
+
+    @Override
+    public Action visitBlockStmt(Stmt.Block stmt) {
+        Action[] body = compile(stmt.statements);
+        int locals = stmt.locals;
+
+        if (locals == 0) {
+            return env -> run(body, env);
+        }
+        return env -> run(body, new Environment(env, locals));
+    }
+
+    private static Completion run(Action[] body, Environment env) {
+        for (Action action : body) {
+            Completion completion = action.exec(env);
+            if (completion != NORMAL) return completion;
+        }
+        return NORMAL;
+    }
+
+    @Override
+    public Action visitExpressionStmt(Stmt.Expression stmt) {
+        Node expression = compile(stmt.expression);
+        return env -> {
+            expression.eval(env);
+            return NORMAL;
+        };
+    }
+
+    /**
+     * The body is compiled here, once. Executing the declaration only creates
+     * the function value around the current environment.
+     */
+    @Override
+    public Action visitFunctionStmt(Stmt.Function stmt) {
+        Action[] statements = compile(stmt.body);
+        Action body = env -> run(statements, env);
+
+        if (stmt.slot < 0) {
+            Global global = globals.cell(stmt.name.symbol);
+            return env -> {
+                global.define(new ClosureFunction(stmt, body, env, this));
+                return NORMAL;
+            };
+        }
+
+        int slot = stmt.slot;
+        return env -> {
+            env.define(slot, new ClosureFunction(stmt, body, env, this));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitIfStmt(Stmt.If stmt) {
+        Node condition = compile(stmt.condition);
+        Action thenBranch = compile(stmt.thenBranch);
+
+        if (stmt.elseBranch == null) {
+            return env -> Interpreter.isTruthLike(condition.eval(env)) ? thenBranch.exec(env) : NORMAL;
+        }
+
+        Action elseBranch = compile(stmt.elseBranch);
+        return env -> Interpreter.isTruthLike(condition.eval(env))
+                ? thenBranch.exec(env) : elseBranch.exec(env);
+    }
+
+    @Override
+    public Action visitPrintStmt(Stmt.Print stmt) {
+        Node expression = compile(stmt.expression);
+        return env -> {
+            System.out.print(Interpreter.stringify(expression.eval(env)) + System.lineSeparator());
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            return env -> RETURN;
+        }
+
+        Node value = compile(stmt.value);
+        return env -> {
+            returnValue = value.eval(env);
+            return RETURN;
+        };
+    }
+
+    @Override
+    public Action visitVarStmt(Stmt.Var stmt) {
+        Node initializer = stmt.initializer == null ? env -> null : compile(stmt.initializer);
+
+        if (stmt.slot < 0) {
+            Global global = globals.cell(stmt.name.symbol);
+            return env -> {
+                global.define(initializer.eval(env));
+                return NORMAL;
+            };
+        }
+
+        int slot = stmt.slot;
+        return env -> {
+            env.define(slot, initializer.eval(env));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitWhileStmt(Stmt.While stmt) {
+        Node condition = compile(stmt.condition);
+        Action body = compile(stmt.body);
+
+        return env -> {
+            while (Interpreter.isTruthLike(condition.eval(env))) {
+                Completion completion = body.exec(env);
+                if (completion == BREAK) break;
+                if (completion == RETURN) return RETURN;
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitBreakStmt(Stmt.Break stmt) {
+        return env -> BREAK;
+    }
+}
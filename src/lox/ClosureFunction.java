@@ -0,0 +1,57 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Runtime value of a function under the closure-compiling engine.
+ * The body was compiled once, when the declaration was compiled; each
+ * evaluation of the declaration only binds it to an environment.
+ */
+public class ClosureFunction implements LoxCallable {
+    private final String name;
+    private final int arity;
+    private final int locals;
+    private final ClosureCompiler.Action body;
+    private final Environment closure;
+    private final ClosureCompiler engine;
+
+    ClosureFunction(Stmt.Function declaration, ClosureCompiler.Action body,
+                    Environment closure, ClosureCompiler engine) {
+        this.name = declaration.name.lexeme;
+        this.arity = declaration.params.size();
+        this.locals = declaration.locals;
+        this.body = body;
+        this.closure = closure;
+        this.engine = engine;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> args) {
+        return invoke(args.toArray());
+    }
+
+    Object invoke(Object[] args) {
+        Environment env = closure;
+        if (locals > 0) {
+            env = new Environment(closure, locals);
+            for (int i = 0; i < arity; i++) {
+                env.define(i, args[i]);
+            }
+        }
+
+        if (body.exec(env) == Completion.RETURN) {
+            return engine.takeReturnValue();
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,23 @@
+package lox;
+
+/**
+ * A function body compiled for the VM. It lives in the constant pool of the
+ * enclosing chunk; the CLOSURE instruction turns it into a VMFunction.
+ */
+final class CompiledFunction {
+    final String name;
+    final int arity;
+    final int locals;
+    final Chunk chunk = new Chunk();
+
+    CompiledFunction(String name, int arity, int locals) {
+        this.name = name;
+        this.arity = arity;
+        this.locals = locals;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
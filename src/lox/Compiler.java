@@ -0,0 +1,395 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static lox.OpCode.*;
+
+/**
+ * Compiles resolved Stmt/Expr trees to bytecode for the VM.
+ * Variables keep the (depth, slot) addresses the Resolver gave them, so the VM
+ * uses the same frames as the tree-walking Interpreter. Globals are resolved
+ * to their cells in the VM's global table at compile time, and the cells are
+ * what the global instructions take as their constant.
+ */
+final class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final Environment globals;
+    private final ErrorReporter errors;
+    private CompiledFunction function;
+    private int scopeDepth = 0;
+    private Loop loop = null;
+    private int line = 1;
+
+    /**
+     * Scopes and pending break jumps of a loop being compiled.
+     */
+    private static final class Loop {
+        final Loop enclosing;
+        final int scopeDepth;
+        final List<Integer> breaks = new ArrayList<>();
+
+        Loop(Loop enclosing, int scopeDepth) {
+            this.enclosing = enclosing;
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    /**
+     * @param errors where operands too large for their instruction are reported
+     */
+    Compiler(Environment globals, ErrorReporter errors) {
+        this.globals = globals;
+        this.errors = errors;
+    }
+
+    /**
+     * Compiles a whole program into the body of an implicit top-level function.
+     * @param stmts resolved statements
+     * @return the compiled script
+     */
+    CompiledFunction compile(List<Stmt> stmts) {
+        function = new CompiledFunction("script", 0, 0);
+        for (Stmt stmt : stmts) {
+            compile(stmt);
+        }
+        emit(NIL);
+        emit(RETURN);
+        function.chunk.finish();
+        return function;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.locals == 0) {
+            for (Stmt statement : stmt.statements) {
+                compile(statement);
+            }
+            return null;
+        }
+
+        if (tooManyLocals(stmt.locals)) return null;
+        emitShort(PUSH_SCOPE, stmt.locals);
+        scopeDepth++;
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        scopeDepth--;
+        emit(POP_SCOPE);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        CompiledFunction enclosing = function;
+        int enclosingScopeDepth = scopeDepth;
+        Loop enclosingLoop = loop;
+
+        function = new CompiledFunction(stmt.name.lexeme, stmt.params.size(), stmt.locals);
+        scopeDepth = 0;
+        loop = null;
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emit(NIL);
+        emit(RETURN);
+        function.chunk.finish();
+
+        CompiledFunction compiled = function;
+        function = enclosing;
+        scopeDepth = enclosingScopeDepth;
+        loop = enclosingLoop;
+
+        line = stmt.name.line;
+        emitConstant(CLOSURE, compiled);
+        define(stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int thenJump = emitJump(JUMP_IF_FALSE);
+        emit(POP);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(JUMP);
+        patchJump(thenJump);
+        emit(POP);
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emit(NIL);
+        }
+        emit(RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(NIL);
+        }
+        line = stmt.name.line;
+        define(stmt.name, stmt.slot);
+        return null;
+    }
+
+    /**
+     * The condition stays on the stack across JUMP_IF_FALSE, so both the body
+     * and the exit pop it. Breaks jump past that pop, with an already clean stack.
+     */
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = function.chunk.count;
+        compile(stmt.condition);
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        emit(POP);
+
+        loop = new Loop(loop, scopeDepth);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(POP);
+        for (int jump : loop.breaks) {
+            patchJump(jump);
+        }
+        loop = loop.enclosing;
+        return null;
+    }
+
+    /**
+     * Leaves every scope opened inside the loop, then jumps to its end.
+     */
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        line = stmt.self.line;
+        for (int i = loop.scopeDepth; i < scopeDepth; i++) {
+            emit(POP_SCOPE);
+        }
+        loop.breaks.add(emitJump(JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        if (expr.depth < 0) {
+            emitConstant(SET_GLOBAL, globals.cell(expr.name.symbol));
+        } else {
+            emitLocal(SET_LOCAL, expr.depth, expr.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.op.line;
+
+        switch (expr.op.type) {
+            case PLUS -> emit(ADD);
+            case MINUS -> emit(SUBTRACT);
+            case STAR -> emit(MULTIPLY);
+            case SLASH -> emit(DIVIDE);
+            case GREATER -> emit(GREATER);
+            case GREATER_EQUAL -> emit(GREATER_EQUAL);
+            case LESS -> emit(LESS);
+            case LESS_EQUAL -> emit(LESS_EQUAL);
+            case EQUAL_EQUAL -> emit(EQUAL);
+            case BANG_EQUAL -> {
+                emit(EQUAL);
+                emit(NOT);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        for (Expr arg : expr.args) {
+            compile(arg);
+        }
+        line = expr.paren.line;
+        emit(CALL);
+        emit((byte) expr.args.size());
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(NIL);
+        } else if (expr.value instanceof Boolean) {
+            emit((boolean) expr.value ? TRUE : FALSE);
+        } else {
+            emitConstant(CONSTANT, expr.value);
+        }
+        return null;
+    }
+
+    /**
+     * Short-circuits by jumping over the right operand, leaving the left
+     * operand as the result.
+     */
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        line = expr.op.line;
+
+        if (expr.op.type == TokenType.OR) {
+            int elseJump = emitJump(JUMP_IF_FALSE);
+            int endJump = emitJump(JUMP);
+            patchJump(elseJump);
+            emit(POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(JUMP_IF_FALSE);
+            emit(POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.op.line;
+
+        switch (expr.op.type) {
+            case MINUS -> emit(NEGATE);
+            case BANG -> emit(NOT);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        if (expr.depth < 0) {
+            emitConstant(GET_GLOBAL, globals.cell(expr.name.symbol));
+        } else {
+            emitLocal(GET_LOCAL, expr.depth, expr.slot);
+        }
+        return null;
+    }
+
+    private void define(Token name, int slot) {
+        if (slot < 0) {
+            emitConstant(DEFINE_GLOBAL, globals.cell(name.symbol));
+        } else if (!tooManyLocals(slot)) {
+            emitShort(DEFINE_LOCAL, slot);
+        }
+    }
+
+    private void emit(byte b) {
+        function.chunk.write(b, line);
+    }
+
+    private void emitShort(byte op, int operand) {
+        emit(op);
+        emit((byte) (operand >> 8));
+        emit((byte) operand);
+    }
+
+    private void emitLocal(byte op, int depth, int slot) {
+        if (depth > 0xff) {
+            errors.error(line, "Too many nested scopes.");
+            return;
+        }
+        if (tooManyLocals(slot)) return;
+        emit(op);
+        emit((byte) depth);
+        emit((byte) (slot >> 8));
+        emit((byte) slot);
+    }
+
+    /**
+     * Local counts and slots are 16-bit operands.
+     * @return whether the count or slot is too big for one, after reporting it
+     */
+    private boolean tooManyLocals(int count) {
+        if (count <= 0xffff) return false;
+        errors.error(line, "Too many local variables in one scope.");
+        return true;
+    }
+
+    /**
+     * @return offset of the jump's operand, to be patched once the target is known
+     */
+    private int emitJump(byte op) {
+        emitShort(op, 0xffff);
+        return function.chunk.count - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = function.chunk.count - offset - 2;
+        if (jump > 0xffff) {
+            errors.error(line, "Too much code to jump over.");
+            return;
+        }
+        function.chunk.code[offset] = (byte) (jump >> 8);
+        function.chunk.code[offset + 1] = (byte) jump;
+    }
+
+    private void emitLoop(int loopStart) {
+        int offset = function.chunk.count - loopStart + 3;
+        if (offset > 0xffff) {
+            errors.error(line, "Loop body too large.");
+            return;
+        }
+        emitShort(LOOP, offset);
+    }
+
+    private void emitConstant(byte op, Object value) {
+        int index = function.chunk.addConstant(value);
+        if (index > 0xffff) {
+            errors.error(line, "Too many constants in one chunk.");
+            return;
+        }
+        emitShort(op, index);
+    }
+}
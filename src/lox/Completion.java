@@ -0,0 +1,10 @@
+package lox;
+
+/**
+ * How a statement finished. Anything other than NORMAL unwinds the enclosing
+ * statements until a loop (BREAK) or a function call (RETURN) consumes it.
+ * The value of a return travels separately, so signalling allocates nothing.
+ */
+enum Completion {
+    NORMAL, BREAK, RETURN
+}
@@ -0,0 +1,11 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Something that can execute a resolved program.
+ * Lox.run hands every program to the engine chosen on the command line.
+ */
+public interface Engine {
+    void interpret(List<Stmt> stmts);
+}
@@ -1,45 +1,172 @@
 package lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * Storage for variables.
+ * The global environment keeps its variables by name, since globals can be
+ * defined at any point (and from the REPL): each name has a Global cell in a
+ * table keyed by the name's SymbolTable ID, and engines cache the cells at
+ * their use sites so the name is not looked up again. Every other environment is a
+ * fixed-size frame whose slots were assigned ahead of time by the Resolver.
+ * A global environment forked from a GlobalSnapshot starts with an empty
+ * table, and copies a global out of the snapshot the first time its cell
+ * is asked for, through a Copier of its own.
+ * Frames created by the VM are unboxed: each slot is a NanBox long, with the
+ * object slots acting as its side table.
+ */
 public class Environment {
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private Global[] table;
+    private int cellCount = 0;
+    private final GlobalSnapshot snapshot;
+    private final GlobalSnapshot.Copier copier;
+    private final Object[] slots;
+    private final long[] raw;
 
     void define(String name, Object value) {
-        values.put(name, value);
+        cell(SymbolTable.id(name)).define(value);
+    }
+
+    void define(int slot, Object value) {
+        slots[slot] = value;
     }
 
     Object get(Token name) {
-        if(values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
+        return cell(name.symbol).get(name);
+    }
 
-        //recursively search in outer scope
-        if (enclosing != null) return enclosing.get(name);
+    void assign(Token name, Object value) {
+        cell(name.symbol).assign(name, value);
+    }
+
+    /**
+     * @param symbol SymbolTable ID of the name
+     * @return the cell of the global with that name, created undefined if the
+     * name was never used before
+     */
+    Global cell(int symbol) {
+        Global global = table[Global.slot(table, symbol)];
+        if (global != null) return global;
 
-        throw new RuntimeError(name, "Undefined variable: " + name.lexeme);
+        global = new Global(this, symbol);
+        if (snapshot != null) snapshot.restore(global, symbol, copier);
+        if ((cellCount + 1) * 2 > table.length) grow();
+        table[Global.slot(table, symbol)] = global;
+        cellCount++;
+        return global;
     }
 
-    void assign(Token name, Object value) {
-        if(values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
+    private void grow() {
+        Global[] old = table;
+        table = new Global[old.length * 2];
+        for (Global global : old) {
+            if (global != null) table[Global.slot(table, global.symbol)] = global;
         }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    }
+
+    /**
+     * @return the globals defined in this environment as they are now
+     */
+    GlobalSnapshot snapshot() {
+        // Copied out first, so they share values with the globals already copied as they should.
+        if (snapshot != null) snapshot.restoreAll(this);
+
+        GlobalSnapshot.Copier frozenCopier = new GlobalSnapshot.Copier(null);
+        Global[] frozen = new Global[table.length];
+        for (Global global : table) {
+            if (global == null || !global.defined) continue;
+            Global copy = new Global(null, global.symbol);
+            copy.define(frozenCopier.copy(global.value));
+            frozen[Global.slot(frozen, global.symbol)] = copy;
+        }
+        return new GlobalSnapshot(frozen);
+    }
+
+    boolean isGlobal() {
+        return table != null;
+    }
+
+    /**
+     * @param enclosing copy of the enclosing frame
+     * @return a copy of this frame, holding copies of its values
+     */
+    Environment copyFrame(Environment enclosing, GlobalSnapshot.Copier copier) {
+        Environment copy = copier.copied(this, new Environment(enclosing, slots.length, raw != null));
+        for (int slot = 0; slot < slots.length; slot++) {
+            copy.slots[slot] = copier.copy(slots[slot]);
         }
+        if (raw != null) System.arraycopy(raw, 0, copy.raw, 0, raw.length);
+        return copy;
+    }
 
-        throw new RuntimeError(name, "Undefined variable: " + name.lexeme);
+    /**
+     * Reads a local variable resolved to a slot in the frame depth hops out.
+     * @param depth number of enclosing frames to walk, as found by the Resolver
+     * @param slot index of the variable within that frame
+     * @return value of the variable
+     */
+    Object getAt(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
+
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
+    }
+
+    /**
+     * Drops every value held by the frame, so it can be reused for another call.
+     */
+    void clear() {
+        Arrays.fill(slots, null);
+    }
+
+    long raw(int slot) {
+        return raw[slot];
+    }
+
+    Object ref(int slot) {
+        return slots[slot];
+    }
+
+    void store(int slot, long value, Object ref) {
+        raw[slot] = value;
+        slots[slot] = ref;
+    }
+
+    Environment ancestor(int depth) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) {
+            env = env.enclosing;
+        }
+        return env;
     }
 
     Environment() {
+        this((GlobalSnapshot) null);
+    }
+
+    /**
+     * @param snapshot globals to start from, or null for none
+     */
+    Environment(GlobalSnapshot snapshot) {
         enclosing = null;
+        table = new Global[64];
+        this.snapshot = snapshot;
+        copier = snapshot == null ? null : new GlobalSnapshot.Copier(this);
+        slots = null;
+        raw = null;
+    }
+
+    Environment(Environment enclosing, int size) {
+        this(enclosing, size, false);
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size, boolean unboxed) {
         this.enclosing = enclosing;
+        snapshot = null;
+        copier = null;
+        slots = new Object[size];
+        raw = unboxed ? new long[size] : null;
     }
 }
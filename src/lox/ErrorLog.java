@@ -0,0 +1,26 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the compile errors of one file, formatted as Lox.CONSOLE would
+ * print them, instead of printing them right away.
+ */
+final class ErrorLog implements ErrorReporter {
+    private final List<String> messages = new ArrayList<>();
+
+    @Override
+    public void report(int line, String where, String message) {
+        messages.add("[" + line + "] Error" + where + ": " + message);
+    }
+
+    @Override
+    public boolean hadError() {
+        return !messages.isEmpty();
+    }
+
+    List<String> messages() {
+        return messages;
+    }
+}
@@ -0,0 +1,33 @@
+package lox;
+
+/**
+ * Where the Scanner, Parser and Resolver report compile errors.
+ * Lox.CONSOLE prints them to stderr and sets Lox.hadError, as a single script
+ * or REPL line needs; an ErrorLog keeps them per file, so that several files
+ * can be compiled at once.
+ */
+interface ErrorReporter {
+    /**
+     * @param line line where the error happened
+     * @param where text pointing at the offending token, or "" if there is none
+     * @param message error message
+     */
+    void report(int line, String where, String message);
+
+    /**
+     * @return whether any error was reported so far
+     */
+    boolean hadError();
+
+    default void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    default void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, "", message);
+        } else {
+            report(token.line, " at " + token.lexeme + "'", message);
+        }
+    }
+}
@@ -26,6 +26,9 @@ public abstract class Expr {
         }
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot;
+        Global global;
     }
     public static class Binary extends Expr {
         public Binary(Expr left, Token op, Expr right) {
@@ -41,6 +44,7 @@ public abstract class Expr {
         final Expr left;
         final Token op;
         final Expr right;
+        byte state;
     }
     public static class Call extends Expr {
         public Call(Expr callee, Token paren, List<Expr> args) {
@@ -117,6 +121,9 @@ public abstract class Expr {
             return visitor.visitVariableExpr(this);
         }
         final Token name;
+        int depth = -1;
+        int slot;
+        Global global;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
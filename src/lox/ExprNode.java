@@ -0,0 +1,18 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Generated by tool.GenerateAst --records from the same definitions as Expr.
+ * Build one with RecordAst.convert once the Resolver has run.
+ */
+public sealed interface ExprNode {
+    record Assign(Token name, ExprNode value, int depth, int slot) implements ExprNode {}
+    record Binary(ExprNode left, Token op, ExprNode right) implements ExprNode {}
+    record Call(ExprNode callee, Token paren, List<ExprNode> args) implements ExprNode {}
+    record Grouping(ExprNode expression) implements ExprNode {}
+    record Literal(Object value) implements ExprNode {}
+    record Logical(ExprNode left, Token op, ExprNode right) implements ExprNode {}
+    record Unary(Token op, ExprNode right) implements ExprNode {}
+    record Variable(Token name, int depth, int slot) implements ExprNode {}
+}
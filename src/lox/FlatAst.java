@@ -0,0 +1,513 @@
+package lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generated by tool.GenerateAst from the same definitions as Expr and Stmt.
+ * The tree as a few flat arrays instead of an object per node. A node is an
+ * offset into nodes, holding its kind and then its fields in order: child
+ * nodes as offsets (-1 for none), tokens as indexes into the token arrays,
+ * lists as offsets into lists (a count, then the items), ints and booleans
+ * as they are, and anything else as an index into a side array of its type.
+ * Equal values of fields that never change share one side array entry, and
+ * fields after the '|' only get an entry once they are set to something.
+ * A token is its type, line and SymbolTable ID; the lexeme of an identifier
+ * comes from the SymbolTable, and any other token is spelled by its type.
+ * Build one with flatten once the Resolver has run.
+ */
+final class FlatAst implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    static final int ASSIGN = 0;
+    static final int BINARY = 1;
+    static final int CALL = 2;
+    static final int GROUPING = 3;
+    static final int LITERAL = 4;
+    static final int LOGICAL = 5;
+    static final int UNARY = 6;
+    static final int VARIABLE = 7;
+    static final int BLOCK = 8;
+    static final int EXPRESSION = 9;
+    static final int FUNCTION = 10;
+    static final int IF = 11;
+    static final int PRINT = 12;
+    static final int RETURN = 13;
+    static final int VAR = 14;
+    static final int WHILE = 15;
+    static final int BREAK = 16;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    int[] nodes = new int[1024];
+    int[] lists = new int[256];
+    byte[] tokenTypes = new byte[256];
+    int[] lines = new int[256];
+    int[] symbols = new int[256];
+    Global[] globals = new Global[64];
+    Object[] objects = new Object[64];
+    private final String[] spellings = new String[TYPES.length];
+    private Map<Object, Integer> objectIndex = new HashMap<>();
+    private int nodeCount = 0;
+    private int listCount = 0;
+    private int tokenCount = 0;
+    private int globalCount = 0;
+    private int objectCount = 0;
+    /** Offset in lists of the top-level statements. */
+    int program;
+
+    private FlatAst() {}
+
+    static FlatAst flatten(List<Stmt> stmts) {
+        FlatAst ast = new FlatAst();
+        ast.program = ast.addStmtList(stmts);
+        ast.trim();
+        return ast;
+    }
+
+    int kind(int node) {
+        return nodes[node];
+    }
+
+    int listSize(int list) {
+        return lists[list];
+    }
+
+    int listItem(int list, int index) {
+        return lists[list + 1 + index];
+    }
+
+    TokenType tokenType(int token) {
+        return TYPES[tokenTypes[token]];
+    }
+
+    String lexeme(int token) {
+        int symbol = symbols[token];
+        return symbol >= 0 ? SymbolTable.name(symbol) : spellings[tokenTypes[token]];
+    }
+
+    /**
+     * @return a Token for the token at that index, made on every call
+     */
+    Token token(int token) {
+        return new Token(tokenType(token), lexeme(token), null, lines[token], symbols[token]);
+    }
+
+    int assignName(int node) {
+        return nodes[node + 1];
+    }
+
+    int assignValue(int node) {
+        return nodes[node + 2];
+    }
+
+    int assignDepth(int node) {
+        return nodes[node + 3];
+    }
+
+    void setAssignDepth(int node, int value) {
+        nodes[node + 3] = value;
+    }
+
+    int assignSlot(int node) {
+        return nodes[node + 4];
+    }
+
+    void setAssignSlot(int node, int value) {
+        nodes[node + 4] = value;
+    }
+
+    Global assignGlobal(int node) {
+        int index = nodes[node + 5];
+        return index < 0 ? null : globals[index];
+    }
+
+    void setAssignGlobal(int node, Global value) {
+        if (nodes[node + 5] < 0) {
+            nodes[node + 5] = addGlobal(value);
+        } else {
+            globals[nodes[node + 5]] = value;
+        }
+    }
+
+    int binaryLeft(int node) {
+        return nodes[node + 1];
+    }
+
+    int binaryOp(int node) {
+        return nodes[node + 2];
+    }
+
+    int binaryRight(int node) {
+        return nodes[node + 3];
+    }
+
+    int callCallee(int node) {
+        return nodes[node + 1];
+    }
+
+    int callParen(int node) {
+        return nodes[node + 2];
+    }
+
+    int callArgs(int node) {
+        return nodes[node + 3];
+    }
+
+    int groupingExpression(int node) {
+        return nodes[node + 1];
+    }
+
+    Object literalValue(int node) {
+        return objects[nodes[node + 1]];
+    }
+
+    int logicalLeft(int node) {
+        return nodes[node + 1];
+    }
+
+    int logicalOp(int node) {
+        return nodes[node + 2];
+    }
+
+    int logicalRight(int node) {
+        return nodes[node + 3];
+    }
+
+    int unaryOp(int node) {
+        return nodes[node + 1];
+    }
+
+    int unaryRight(int node) {
+        return nodes[node + 2];
+    }
+
+    int variableName(int node) {
+        return nodes[node + 1];
+    }
+
+    int variableDepth(int node) {
+        return nodes[node + 2];
+    }
+
+    void setVariableDepth(int node, int value) {
+        nodes[node + 2] = value;
+    }
+
+    int variableSlot(int node) {
+        return nodes[node + 3];
+    }
+
+    void setVariableSlot(int node, int value) {
+        nodes[node + 3] = value;
+    }
+
+    Global variableGlobal(int node) {
+        int index = nodes[node + 4];
+        return index < 0 ? null : globals[index];
+    }
+
+    void setVariableGlobal(int node, Global value) {
+        if (nodes[node + 4] < 0) {
+            nodes[node + 4] = addGlobal(value);
+        } else {
+            globals[nodes[node + 4]] = value;
+        }
+    }
+
+    int blockStatements(int node) {
+        return nodes[node + 1];
+    }
+
+    int blockLocals(int node) {
+        return nodes[node + 2];
+    }
+
+    void setBlockLocals(int node, int value) {
+        nodes[node + 2] = value;
+    }
+
+    int expressionExpression(int node) {
+        return nodes[node + 1];
+    }
+
+    int functionName(int node) {
+        return nodes[node + 1];
+    }
+
+    int functionParams(int node) {
+        return nodes[node + 2];
+    }
+
+    int functionBody(int node) {
+        return nodes[node + 3];
+    }
+
+    int functionSlot(int node) {
+        return nodes[node + 4];
+    }
+
+    void setFunctionSlot(int node, int value) {
+        nodes[node + 4] = value;
+    }
+
+    int functionLocals(int node) {
+        return nodes[node + 5];
+    }
+
+    void setFunctionLocals(int node, int value) {
+        nodes[node + 5] = value;
+    }
+
+    boolean functionDeclaresFunctions(int node) {
+        return nodes[node + 6] != 0;
+    }
+
+    void setFunctionDeclaresFunctions(int node, boolean value) {
+        nodes[node + 6] = value ? 1 : 0;
+    }
+
+    int ifCondition(int node) {
+        return nodes[node + 1];
+    }
+
+    int ifThenBranch(int node) {
+        return nodes[node + 2];
+    }
+
+    int ifElseBranch(int node) {
+        return nodes[node + 3];
+    }
+
+    int printExpression(int node) {
+        return nodes[node + 1];
+    }
+
+    int returnKeyword(int node) {
+        return nodes[node + 1];
+    }
+
+    int returnValue(int node) {
+        return nodes[node + 2];
+    }
+
+    int varName(int node) {
+        return nodes[node + 1];
+    }
+
+    int varInitializer(int node) {
+        return nodes[node + 2];
+    }
+
+    int varSlot(int node) {
+        return nodes[node + 3];
+    }
+
+    void setVarSlot(int node, int value) {
+        nodes[node + 3] = value;
+    }
+
+    int whileCondition(int node) {
+        return nodes[node + 1];
+    }
+
+    int whileBody(int node) {
+        return nodes[node + 2];
+    }
+
+    int breakSelf(int node) {
+        return nodes[node + 1];
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+        return node(ASSIGN, addToken(expr.name), addExpr(expr.value), expr.depth, expr.slot, expr.global == null ? -1 : addGlobal(expr.global));
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+        return node(BINARY, addExpr(expr.left), addToken(expr.op), addExpr(expr.right));
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+        return node(CALL, addExpr(expr.callee), addToken(expr.paren), addExprList(expr.args));
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+        return node(GROUPING, addExpr(expr.expression));
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+        return node(LITERAL, shareObject(expr.value));
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+        return node(LOGICAL, addExpr(expr.left), addToken(expr.op), addExpr(expr.right));
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+        return node(UNARY, addToken(expr.op), addExpr(expr.right));
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+        return node(VARIABLE, addToken(expr.name), expr.depth, expr.slot, expr.global == null ? -1 : addGlobal(expr.global));
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+        return node(BLOCK, addStmtList(stmt.statements), stmt.locals);
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+        return node(EXPRESSION, addExpr(stmt.expression));
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+        return node(FUNCTION, addToken(stmt.name), addTokenList(stmt.params), addStmtList(stmt.body), stmt.slot, stmt.locals, stmt.declaresFunctions ? 1 : 0);
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+        return node(IF, addExpr(stmt.condition), addStmt(stmt.thenBranch), addStmt(stmt.elseBranch));
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+        return node(PRINT, addExpr(stmt.expression));
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+        return node(RETURN, addToken(stmt.keyword), addExpr(stmt.value));
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+        return node(VAR, addToken(stmt.name), addExpr(stmt.initializer), stmt.slot);
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+        return node(WHILE, addExpr(stmt.condition), addStmt(stmt.body));
+    }
+
+    @Override
+    public Integer visitBreakStmt(Stmt.Break stmt) {
+        return node(BREAK, addToken(stmt.self));
+    }
+
+    private int addExpr(Expr expr) {
+        return expr == null ? -1 : expr.accept(this);
+    }
+
+    private int addStmt(Stmt stmt) {
+        return stmt == null ? -1 : stmt.accept(this);
+    }
+
+    private int addToken(Token token) {
+        if (tokenCount == lines.length) {
+            int capacity = tokenCount * 2;
+            tokenTypes = Arrays.copyOf(tokenTypes, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+        }
+        tokenTypes[tokenCount] = (byte) token.type.ordinal();
+        if (token.symbol < 0) spellings[token.type.ordinal()] = token.lexeme;
+        lines[tokenCount] = token.line;
+        symbols[tokenCount] = token.symbol;
+        return tokenCount++;
+    }
+
+    private int addExprList(List<Expr> items) {
+        int[] flat = new int[items.size()];
+        for (int i = 0; i < flat.length; i++) {
+            flat[i] = addExpr(items.get(i));
+        }
+        return addList(flat);
+    }
+
+    private int addStmtList(List<Stmt> items) {
+        int[] flat = new int[items.size()];
+        for (int i = 0; i < flat.length; i++) {
+            flat[i] = addStmt(items.get(i));
+        }
+        return addList(flat);
+    }
+
+    private int addTokenList(List<Token> items) {
+        int[] flat = new int[items.size()];
+        for (int i = 0; i < flat.length; i++) {
+            flat[i] = addToken(items.get(i));
+        }
+        return addList(flat);
+    }
+
+    private int addList(int[] items) {
+        lists = grow(lists, listCount + 1 + items.length);
+        int list = listCount;
+        lists[listCount++] = items.length;
+        System.arraycopy(items, 0, lists, listCount, items.length);
+        listCount += items.length;
+        return list;
+    }
+
+    private int addGlobal(Global value) {
+        if (globalCount == globals.length) {
+            globals = Arrays.copyOf(globals, Math.max(8, globalCount * 2));
+        }
+        globals[globalCount] = value;
+        return globalCount++;
+    }
+
+    private int addObject(Object value) {
+        if (objectCount == objects.length) {
+            objects = Arrays.copyOf(objects, Math.max(8, objectCount * 2));
+        }
+        objects[objectCount] = value;
+        return objectCount++;
+    }
+
+    private int shareObject(Object value) {
+        Integer shared = objectIndex.get(value);
+        if (shared != null) return shared;
+        int added = addObject(value);
+        objectIndex.put(value, added);
+        return added;
+    }
+
+    private int node(int kind, int... fields) {
+        nodes = grow(nodes, nodeCount + 1 + fields.length);
+        int node = nodeCount;
+        nodes[nodeCount++] = kind;
+        System.arraycopy(fields, 0, nodes, nodeCount, fields.length);
+        nodeCount += fields.length;
+        return node;
+    }
+
+    private static int[] grow(int[] array, int size) {
+        if (size <= array.length) return array;
+        return Arrays.copyOf(array, Math.max(array.length * 2, size));
+    }
+
+    /**
+     * Drops the spare capacity left from building.
+     */
+    private void trim() {
+        nodes = Arrays.copyOf(nodes, nodeCount);
+        lists = Arrays.copyOf(lists, listCount);
+        tokenTypes = Arrays.copyOf(tokenTypes, tokenCount);
+        lines = Arrays.copyOf(lines, tokenCount);
+        symbols = Arrays.copyOf(symbols, tokenCount);
+        globals = Arrays.copyOf(globals, globalCount);
+        objects = Arrays.copyOf(objects, objectCount);
+        objectIndex = null;
+    }
+}
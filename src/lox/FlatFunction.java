@@ -0,0 +1,48 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Runtime value of a function under the flat engine: the offset of its
+ * declaration in a FlatAst, bound to the environment it was declared in.
+ */
+public class FlatFunction implements LoxCallable {
+    private final FlatAst ast;
+    private final int declaration;
+    private final Environment closure;
+    private final FlatInterpreter engine;
+
+    FlatFunction(FlatAst ast, int declaration, Environment closure, FlatInterpreter engine) {
+        this.ast = ast;
+        this.declaration = declaration;
+        this.closure = closure;
+        this.engine = engine;
+    }
+
+    @Override
+    public int arity() {
+        return ast.listSize(ast.functionParams(declaration));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> args) {
+        return invoke(args.toArray());
+    }
+
+    Object invoke(Object[] args) {
+        Environment frame = closure;
+        int locals = ast.functionLocals(declaration);
+        if (locals > 0) {
+            frame = new Environment(closure, locals);
+            for (int i = 0; i < args.length; i++) {
+                frame.define(i, args[i]);
+            }
+        }
+        return engine.call(ast, ast.functionBody(declaration), frame);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + ast.lexeme(ast.functionName(declaration)) + ">";
+    }
+}
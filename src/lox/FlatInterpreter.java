@@ -0,0 +1,273 @@
+package lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static lox.Completion.*;
+
+/**
+ * Engine that runs the program in its FlatAst form, selected with --engine=flat.
+ * It behaves like the Interpreter, but the tree it walks is a few arrays rather
+ * than an object graph: a node is an int, and dispatch is a switch on the kind
+ * stored at that offset. Tokens are only turned back into Token objects to
+ * report a runtime error.
+ */
+public class FlatInterpreter implements Engine {
+    final Environment globals = new Environment();
+    private Environment env = globals;
+    private FlatAst ast;
+    private Object returnValue;
+
+    public FlatInterpreter() {
+        Interpreter.defineNatives(globals);
+    }
+
+    @Override
+    public void interpret(List<Stmt> stmts) {
+        ast = FlatAst.flatten(stmts);
+        try {
+            executeList(ast.program);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    /**
+     * Runs a function body in the frame given, against the FlatAst the function
+     * was declared in, which differs from the current one for functions that
+     * came from an earlier REPL line.
+     */
+    Object call(FlatAst ast, int body, Environment frame) {
+        FlatAst prev = this.ast;
+        this.ast = ast;
+        try {
+            if (executeBlock(body, frame) == RETURN) return takeReturnValue();
+            return null;
+        } finally {
+            this.ast = prev;
+        }
+    }
+
+    private Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    private Object evaluate(int node) {
+        switch (ast.kind(node)) {
+            case FlatAst.LITERAL:
+                return ast.literalValue(node);
+            case FlatAst.VARIABLE:
+                return variable(node);
+            case FlatAst.BINARY:
+                return binary(node);
+            case FlatAst.CALL:
+                return call(node);
+            case FlatAst.LOGICAL: {
+                Object left = evaluate(ast.logicalLeft(node));
+                if (ast.tokenType(ast.logicalOp(node)) == TokenType.OR) {
+                    if (Interpreter.isTruthLike(left)) return left;
+                } else if (!Interpreter.isTruthLike(left)) {
+                    return left;
+                }
+                return evaluate(ast.logicalRight(node));
+            }
+            case FlatAst.UNARY: {
+                Object right = evaluate(ast.unaryRight(node));
+                int op = ast.unaryOp(node);
+                if (ast.tokenType(op) == TokenType.BANG) return !Interpreter.isTruthLike(right);
+                if (!(right instanceof Double)) throw new RuntimeError(ast.token(op), "Operand must be a number.");
+                return -(double) right;
+            }
+            case FlatAst.ASSIGN:
+                return assign(node);
+            case FlatAst.GROUPING:
+                return evaluate(ast.groupingExpression(node));
+            default:
+                throw new IllegalStateException("Not an expression: kind " + ast.kind(node));
+        }
+    }
+
+    /**
+     * A global's cell is looked up the first time and then kept in the
+     * FlatAst's side array, as long as it belongs to these globals.
+     */
+    private Object variable(int node) {
+        int depth = ast.variableDepth(node);
+        if (depth >= 0) return env.getAt(depth, ast.variableSlot(node));
+
+        Global global = ast.variableGlobal(node);
+        if (global == null || global.table != globals) {
+            global = globals.cell(ast.symbols[ast.variableName(node)]);
+            ast.setVariableGlobal(node, global);
+        }
+        return global.defined ? global.value : global.get(ast.token(ast.variableName(node)));
+    }
+
+    private Object assign(int node) {
+        Object value = evaluate(ast.assignValue(node));
+        int depth = ast.assignDepth(node);
+        if (depth >= 0) {
+            env.assignAt(depth, ast.assignSlot(node), value);
+            return value;
+        }
+
+        Global global = ast.assignGlobal(node);
+        if (global == null || global.table != globals) {
+            global = globals.cell(ast.symbols[ast.assignName(node)]);
+            ast.setAssignGlobal(node, global);
+        }
+        if (global.defined) {
+            global.value = value;
+        } else {
+            global.assign(ast.token(ast.assignName(node)), value);
+        }
+        return value;
+    }
+
+    private Object binary(int node) {
+        Object left = evaluate(ast.binaryLeft(node));
+        Object right = evaluate(ast.binaryRight(node));
+        int op = ast.binaryOp(node);
+
+        switch (ast.tokenType(op)) {
+            case EQUAL_EQUAL:
+                return Interpreter.isEqual(left, right);
+            case BANG_EQUAL:
+                return !Interpreter.isEqual(left, right);
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof CharSequence a && right instanceof CharSequence b) {
+                    if (!Rope.fits(a, b)) throw new RuntimeError(ast.token(op), Rope.TOO_LONG);
+                    return Rope.concat(a, b);
+                }
+                throw new RuntimeError(ast.token(op), "Operands must be two integers or strings");
+        }
+
+        if (!(left instanceof Double && right instanceof Double)) {
+            throw new RuntimeError(ast.token(op), "Operands must be a number.");
+        }
+        double a = (double) left;
+        double b = (double) right;
+        return switch (ast.tokenType(op)) {
+            case MINUS -> a - b;
+            case SLASH -> a / b;
+            case STAR -> a * b;
+            case LESS -> a < b;
+            case GREATER -> a > b;
+            case LESS_EQUAL -> a <= b;
+            case GREATER_EQUAL -> a >= b;
+            default -> throw new IllegalStateException("Not a binary operator: " + ast.tokenType(op));
+        };
+    }
+
+    private Object call(int node) {
+        Object callee = evaluate(ast.callCallee(node));
+        int args = ast.callArgs(node);
+        Object[] values = new Object[ast.listSize(args)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(ast.listItem(args, i));
+        }
+
+        if (!(callee instanceof LoxCallable function)) {
+            throw new RuntimeError(ast.token(ast.callParen(node)), "Can only call functions and classes");
+        }
+        if (values.length != function.arity()) {
+            throw new RuntimeError(ast.token(ast.callParen(node)), "Expected " + function.arity() +
+                    " args, but got " + values.length + " args.");
+        }
+
+        if (function instanceof FlatFunction flat) return flat.invoke(values);
+        try {
+            return function.call(null, Arrays.asList(values));
+        } catch (NativeError error) {
+            throw new RuntimeError(ast.token(ast.callParen(node)), error.getMessage());
+        }
+    }
+
+    private Completion execute(int node) {
+        switch (ast.kind(node)) {
+            case FlatAst.EXPRESSION:
+                evaluate(ast.expressionExpression(node));
+                return NORMAL;
+            case FlatAst.VAR: {
+                int initializer = ast.varInitializer(node);
+                Object value = initializer < 0 ? null : evaluate(initializer);
+                define(ast.varName(node), ast.varSlot(node), value);
+                return NORMAL;
+            }
+            case FlatAst.BLOCK: {
+                int locals = ast.blockLocals(node);
+                if (locals == 0) return executeList(ast.blockStatements(node));
+                return executeBlock(ast.blockStatements(node), new Environment(env, locals));
+            }
+            case FlatAst.IF: {
+                if (Interpreter.isTruthLike(evaluate(ast.ifCondition(node)))) {
+                    return execute(ast.ifThenBranch(node));
+                }
+                int elseBranch = ast.ifElseBranch(node);
+                return elseBranch < 0 ? NORMAL : execute(elseBranch);
+            }
+            case FlatAst.WHILE: {
+                int condition = ast.whileCondition(node);
+                int body = ast.whileBody(node);
+                while (Interpreter.isTruthLike(evaluate(condition))) {
+                    Completion completion = execute(body);
+                    if (completion == BREAK) break;
+                    if (completion == RETURN) return RETURN;
+                }
+                return NORMAL;
+            }
+            case FlatAst.PRINT: {
+                Object value = evaluate(ast.printExpression(node));
+                System.out.print(Interpreter.stringify(value) + System.lineSeparator());
+                return NORMAL;
+            }
+            case FlatAst.RETURN: {
+                int value = ast.returnValue(node);
+                returnValue = value < 0 ? null : evaluate(value);
+                return RETURN;
+            }
+            case FlatAst.FUNCTION:
+                define(ast.functionName(node), ast.functionSlot(node), new FlatFunction(ast, node, env, this));
+                return NORMAL;
+            case FlatAst.BREAK:
+                return BREAK;
+            default:
+                throw new IllegalStateException("Not a statement: kind " + ast.kind(node));
+        }
+    }
+
+    private void define(int name, int slot, Object value) {
+        if (slot < 0) {
+            globals.cell(ast.symbols[name]).define(value);
+        } else {
+            env.define(slot, value);
+        }
+    }
+
+    /**
+     * @return NORMAL, or the first other completion, which stops the list
+     */
+    private Completion executeList(int list) {
+        int size = ast.listSize(list);
+        for (int i = 0; i < size; i++) {
+            Completion completion = execute(ast.listItem(list, i));
+            if (completion != NORMAL) return completion;
+        }
+        return NORMAL;
+    }
+
+    private Completion executeBlock(int list, Environment env) {
+        Environment prev = this.env;
+        try {
+            this.env = env;
+            return executeList(list);
+        } finally {
+            this.env = prev;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package lox;
+
+/**
+ * Storage for one global variable in the table of the global Environment.
+ * A cell is created the first time its name is looked up, possibly before the
+ * variable is defined, and is never removed or replaced. Call sites can
+ * therefore keep a reference to the cell for as long as the table it belongs
+ * to is the one they run against.
+ */
+final class Global {
+    /** The environment whose table this is in, or null in a GlobalSnapshot. */
+    final Environment table;
+    final int symbol;
+    final String name;
+    Object value;
+    boolean defined = false;
+
+    Global(Environment table, int symbol) {
+        this.table = table;
+        this.symbol = symbol;
+        this.name = SymbolTable.name(symbol);
+    }
+
+    /**
+     * Tables of cells are open-addressed by SymbolTable ID, so their size
+     * follows the number of globals in them, not how many names the process
+     * has seen. IDs are Fibonacci-hashed, as consecutive ones are common.
+     * @param table a power of two long, never full
+     * @return index of the symbol's cell in the table, or of the empty slot it would go in
+     */
+    static int slot(Global[] table, int symbol) {
+        int mask = table.length - 1;
+        int i = (symbol * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+        while (table[i] != null && table[i].symbol != symbol) i = (i + 1) & mask;
+        return i;
+    }
+
+    Object get(Token name) {
+        if (defined) return value;
+        throw new RuntimeError(name, "Undefined variable: " + name.lexeme);
+    }
+
+    void assign(Token name, Object value) {
+        if (!defined) throw new RuntimeError(name, "Undefined variable: " + name.lexeme);
+        this.value = value;
+    }
+
+    void define(Object value) {
+        this.value = value;
+        defined = true;
+    }
+}
@@ -0,0 +1,129 @@
+package lox;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The globals of an environment frozen as they were at one point, typically
+ * after a prelude of library functions and constants has run, so that later
+ * scripts can start from them instead of running the prelude again.
+ * <br>
+ * fork makes a global environment from the snapshot in constant time, however
+ * many globals it has. The fork copies a global into a cell of its own the
+ * first time it looks the name up. Everything a script could change is
+ * copied, both into the snapshot and out to each fork: lists, maps, functions
+ * and the frames their closures captured, so a fork shares nothing mutable
+ * with the snapshot or with other forks, and any number of forks, on any
+ * threads, can share one snapshot. A LoxFunction gets a frame pool and Jit
+ * profile of its own as well.
+ * <br>
+ * Each fork, and the snapshot itself, copies through one Copier, which copies
+ * every object once however many globals or other objects reach it. Values
+ * that shared a list or a captured variable in the prelude still share it in
+ * a fork, and a list that holds itself is copied as one list.
+ */
+public final class GlobalSnapshot {
+    private final Global[] cells;
+
+    GlobalSnapshot(Global[] cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * Copies Lox values for one snapshot or one fork, remembering each object
+     * it has copied so that it is copied only once.
+     */
+    static final class Copier {
+        private final Map<Object, Object> copies = new IdentityHashMap<>();
+        private final Environment globals;
+
+        /**
+         * @param globals global environment that copied closures run against,
+         * or null for a snapshot, whose functions are never called
+         */
+        Copier(Environment globals) {
+            this.globals = globals;
+        }
+
+        /**
+         * @return the value, or its copy if it is something a script could change
+         */
+        Object copy(Object value) {
+            // A Rope is flattened, as forks on other threads would race to do it.
+            if (value instanceof Rope rope) return rope.toString();
+            if (!(value instanceof LoxFunction || value instanceof LoxList || value instanceof LoxMap)) return value;
+
+            Object copy = copies.get(value);
+            if (copy != null) return copy;
+            if (value instanceof LoxFunction function) return function.copy(this);
+            if (value instanceof LoxList list) return list.copy(this);
+            return ((LoxMap) value).copy(this);
+        }
+
+        /**
+         * @return the copy of a frame a closure captured, with the frames around it,
+         * or the globals for a global environment
+         */
+        Environment frame(Environment frame) {
+            if (frame == null || frame.isGlobal()) return globals;
+
+            Environment copy = (Environment) copies.get(frame);
+            if (copy != null) return copy;
+            Environment enclosing = frame(frame.enclosing);
+            // Copying the enclosing frames may have come back around to this one.
+            copy = (Environment) copies.get(frame);
+            if (copy != null) return copy;
+            return frame.copyFrame(enclosing, this);
+        }
+
+        /**
+         * @return the copy already made of the original, or null
+         */
+        Object copyOf(Object original) {
+            return copies.get(original);
+        }
+
+        /**
+         * Records the copy of the original, before anything it holds is copied,
+         * so that whatever leads back to the original gets this copy.
+         * @return the copy
+         */
+        <T> T copied(Object original, T copy) {
+            copies.put(original, copy);
+            return copy;
+        }
+    }
+
+    /**
+     * @return a new global environment holding these globals
+     */
+    Environment fork() {
+        return new Environment(this);
+    }
+
+    /**
+     * @return the frozen cell of the global, or null if it isn't defined
+     */
+    Global cell(int symbol) {
+        return cells[Global.slot(cells, symbol)];
+    }
+
+    /**
+     * Copies every global defined here into the cells of a fork.
+     */
+    void restoreAll(Environment fork) {
+        for (Global frozen : cells) {
+            if (frozen != null) fork.cell(frozen.symbol);
+        }
+    }
+
+    /**
+     * Defines the global in the cell of a fork, if it is defined here.
+     * @param copier the fork's copier
+     */
+    void restore(Global global, int symbol, Copier copier) {
+        Global frozen = cell(symbol);
+        if (frozen == null) return;
+        global.define(copier.copy(frozen.value));
+    }
+}
@@ -0,0 +1,292 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a source buffer compiled as it is edited, for tools that resend the
+ * buffer on every keystroke.
+ * The buffer is kept as a list of top-level declarations, each with its own
+ * text (from its first token up to the next declaration's), the line it
+ * starts on, and its compiled statement and errors. An edit rescans and
+ * reparses only the declarations it touches; every other declaration keeps
+ * its Stmt tree.
+ * <br>
+ * The result is the same as compiling the whole buffer, because a top-level
+ * declaration parses, optimizes and resolves the same wherever it starts.
+ * The exceptions are at the edges of the reparsed text, where the parser
+ * would have read on into a neighbour: after an error (an unterminated string
+ * or block comment is one), in a line comment, or when the next declaration
+ * starts with an else. In those cases the neighbour is reparsed too.
+ * <br>
+ * Tokens remember the line they were scanned on. A declaration that an edit
+ * moved to another line is therefore only recompiled once its statements are
+ * asked for, and until then its errors are moved by the same number of lines.
+ */
+final class IncrementalParser {
+    private static final class Declaration {
+        final String text;
+        final int lines;
+        /** Type of the first token, EOF if the text has none. */
+        final TokenType first;
+        /** Whether the text ends in a line comment, so text after it could join the comment. */
+        boolean endsInComment = false;
+        int start;
+        int line;
+        /** Line the text was compiled at; line numbers in stmts and errors are relative to it. */
+        int compiledLine;
+        /** Statements to run, empty if it optimized away, null if it had errors. */
+        List<Stmt> stmts;
+        List<Diagnostic> errors = new ArrayList<>();
+
+        Declaration(String text, TokenType first, int start, int line) {
+            this.text = text;
+            this.first = first;
+            this.start = start;
+            this.line = line;
+            this.compiledLine = line;
+            this.lines = newlines(text);
+        }
+
+        boolean failed() {
+            return !errors.isEmpty();
+        }
+    }
+
+    private record Diagnostic(int line, String where, String message) { }
+
+    /**
+     * Collects errors into the declaration being parsed, or by line while
+     * scanning, before any declaration is known.
+     */
+    private static final class Collector implements ErrorReporter {
+        final List<Diagnostic> errors = new ArrayList<>();
+        /** Per error, index of the declaration it belongs to, -1 if only its line is known. */
+        final List<Integer> owners = new ArrayList<>();
+        List<Integer> starts = null;
+
+        @Override
+        public void report(int line, String where, String message) {
+            errors.add(new Diagnostic(line, where, message));
+            owners.add(starts == null ? -1 : starts.size() - 1);
+        }
+
+        @Override
+        public boolean hadError() {
+            return !errors.isEmpty();
+        }
+    }
+
+    private final List<Declaration> declarations = new ArrayList<>();
+    private final Optimizer optimizer = new Optimizer();
+    private int length = 0;
+
+    IncrementalParser(String text) {
+        declarations.add(new Declaration("", TokenType.EOF, 0, 1));
+        edit(0, 0, text);
+    }
+
+    /**
+     * Replaces removed chars at offset with the inserted text, and recompiles
+     * the declarations that were touched.
+     * @return number of declarations reparsed, for tools that want to know
+     */
+    int edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " outside of " + length + " chars");
+        }
+
+        // An edit right at a boundary can join a token with the one before it.
+        int from = indexOf(Math.max(offset - 1, 0));
+        int to = indexOf(offset + removed);
+        List<Declaration> parsed;
+        while (true) {
+            parsed = parse(from, to, offset, removed, inserted);
+            Declaration firstParsed = parsed.isEmpty() ? null : parsed.get(0);
+            Declaration lastParsed = parsed.isEmpty() ? null : parsed.get(parsed.size() - 1);
+            if (from > 0 && (declarations.get(from - 1).failed()
+                    || firstParsed != null && firstParsed.first == TokenType.ELSE)) {
+                from--;
+            } else if (to < declarations.size() - 1 && (lastParsed == null || lastParsed.failed()
+                    || lastParsed.endsInComment || declarations.get(to + 1).first == TokenType.ELSE)) {
+                to++;
+            } else {
+                break;
+            }
+        }
+
+        int delta = 0;
+        int lineDelta = 0;
+        for (Declaration declaration : parsed) {
+            delta += declaration.text.length();
+            lineDelta += declaration.lines;
+        }
+        List<Declaration> replaced = declarations.subList(from, to + 1);
+        for (Declaration declaration : replaced) {
+            delta -= declaration.text.length();
+            lineDelta -= declaration.lines;
+        }
+        replaced.clear();
+        replaced.addAll(parsed);
+        for (int i = from + parsed.size(); i < declarations.size(); i++) {
+            declarations.get(i).start += delta;
+            declarations.get(i).line += lineDelta;
+        }
+        length += delta;
+        return parsed.size();
+    }
+
+    /**
+     * @return the statements of the whole buffer, ready to run, or null if it
+     * has compile errors
+     */
+    List<Stmt> statements() {
+        List<Stmt> stmts = new ArrayList<>();
+        for (Declaration declaration : declarations) {
+            if (declaration.failed()) return null;
+            if (declaration.line != declaration.compiledLine) recompile(declaration);
+            if (declaration.failed()) return null;
+            stmts.addAll(declaration.stmts);
+        }
+        return stmts;
+    }
+
+    /**
+     * @return compile errors of the whole buffer, formatted as Lox.CONSOLE prints them
+     */
+    List<String> errors() {
+        List<String> messages = new ArrayList<>();
+        for (Declaration declaration : declarations) {
+            for (Diagnostic error : declaration.errors) {
+                int line = error.line() - declaration.compiledLine + declaration.line;
+                messages.add("[" + line + "] Error" + error.where() + ": " + error.message());
+            }
+        }
+        return messages;
+    }
+
+    String text() {
+        StringBuilder text = new StringBuilder(length);
+        for (Declaration declaration : declarations) {
+            text.append(declaration.text);
+        }
+        return text.toString();
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Scans and parses the text of declarations from to to, with the edit
+     * applied, into new declarations.
+     */
+    private List<Declaration> parse(int from, int to, int offset, int removed, String inserted) {
+        Declaration first = declarations.get(from);
+        StringBuilder region = new StringBuilder();
+        for (int i = from; i <= to; i++) {
+            region.append(declarations.get(i).text);
+        }
+        region.replace(offset - first.start, offset - first.start + removed, inserted);
+        char[] source = region.toString().toCharArray();
+
+        Collector errors = new Collector();
+        Scanner scanner = new Scanner(source, source.length, first.line, errors);
+        TokenBuffer tokens = scanner.scan();
+        List<Integer> starts = new ArrayList<>();
+        errors.starts = starts;
+        List<Stmt> stmts = new Parser(tokens, errors).parse(starts);
+
+        List<Declaration> parsed = new ArrayList<>(stmts.size());
+        int line = first.line;
+        for (int i = 0; i < stmts.size(); i++) {
+            int begin = i == 0 ? 0 : tokens.start(starts.get(i));
+            int end = i + 1 < stmts.size() ? tokens.start(starts.get(i + 1)) : source.length;
+            Declaration declaration = new Declaration(new String(source, begin, end - begin),
+                    tokens.type(starts.get(i)), first.start + begin, line);
+            declaration.stmts = stmts.get(i) == null ? null : new ArrayList<>(List.of(stmts.get(i)));
+            parsed.add(declaration);
+            line += declaration.lines;
+        }
+        if (parsed.isEmpty() && (source.length > 0 || declarations.size() == to - from + 1)) {
+            Declaration blank = new Declaration(new String(source), TokenType.EOF, first.start, first.line);
+            blank.stmts = new ArrayList<>();
+            parsed.add(blank);
+        }
+
+        for (int i = 0; i < errors.errors.size(); i++) {
+            Diagnostic error = errors.errors.get(i);
+            int owner = errors.owners.get(i);
+            parsed.get(owner >= 0 ? owner : ownerOf(parsed, error.line())).errors.add(error);
+        }
+        for (Declaration declaration : parsed) {
+            if (!declaration.failed()) resolve(declaration);
+        }
+        if (!parsed.isEmpty()) parsed.get(parsed.size() - 1).endsInComment = scanner.endsInComment();
+        return parsed;
+    }
+
+    /**
+     * Compiles a declaration again from its text, at the line it is on now.
+     */
+    private void recompile(Declaration declaration) {
+        char[] source = declaration.text.toCharArray();
+        Collector errors = new Collector();
+        TokenBuffer tokens = new Scanner(source, source.length, declaration.line, errors).scan();
+        List<Stmt> stmts = new Parser(tokens, errors).parse();
+
+        declaration.compiledLine = declaration.line;
+        declaration.errors = errors.errors;
+        declaration.stmts = stmts;
+        if (!declaration.failed()) resolve(declaration);
+    }
+
+    private void resolve(Declaration declaration) {
+        Collector errors = new Collector();
+        // Checked as written first, as Lox.compile does.
+        new Resolver(errors).resolve(declaration.stmts);
+        if (!errors.hadError()) {
+            declaration.stmts = optimizer.optimize(declaration.stmts);
+            new Resolver(errors).resolve(declaration.stmts);
+        }
+        if (errors.hadError()) {
+            declaration.errors.addAll(errors.errors);
+            declaration.stmts = null;
+        }
+    }
+
+    /**
+     * @return the last declaration starting on or before the line
+     */
+    private static int ownerOf(List<Declaration> parsed, int line) {
+        int owner = 0;
+        while (owner + 1 < parsed.size() && parsed.get(owner + 1).line <= line) owner++;
+        return owner;
+    }
+
+    /**
+     * @return index of the declaration holding the char at offset, or the last
+     * one for the offset just past the end
+     */
+    private int indexOf(int offset) {
+        int low = 0;
+        int high = declarations.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (declarations.get(mid).start <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int newlines(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,93 @@
+package lox;
+
+/**
+ * Turns ranges of source chars into Strings, building each distinct String
+ * only once. Lookups hash the chars in place, with the same function as
+ * String.hashCode, so finding an existing String allocates nothing. Hashes
+ * are kept next to the table so that probing doesn't touch the Strings.
+ * An identifier's SymbolTable ID is kept next to its String as well, so the
+ * shared SymbolTable is asked only once per distinct name.
+ */
+final class Interner {
+    private String[] table = new String[256];
+    private int[] hashes = new int[256];
+    private int[] symbols = new int[256];
+    private int shift = 32 - 8;
+    private int size = 0;
+
+    String intern(char[] chars, int start, int length) {
+        int i = find(chars, start, length);
+        return table[i];
+    }
+
+    /**
+     * @return the SymbolTable ID of the name spelled by a range of chars
+     */
+    int symbol(char[] chars, int start, int length) {
+        int i = find(chars, start, length);
+        // 0 means no ID yet; IDs are stored plus one.
+        if (symbols[i] == 0) symbols[i] = SymbolTable.id(table[i]) + 1;
+        return symbols[i] - 1;
+    }
+
+    /**
+     * @return index in the table of the String for a range of chars, added if missing
+     */
+    private int find(char[] chars, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int mask = table.length - 1;
+        for (int i = slot(hash); ; i = (i + 1) & mask) {
+            String entry = table[i];
+            if (entry == null) {
+                if ((size + 1) * 2 > table.length) {
+                    grow();
+                    return find(chars, start, length);
+                }
+                table[i] = new String(chars, start, length);
+                hashes[i] = hash;
+                size++;
+                return i;
+            }
+            if (hashes[i] == hash && matches(entry, chars, start, length)) return i;
+        }
+    }
+
+    private static boolean matches(String entry, char[] chars, int start, int length) {
+        if (entry.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (entry.charAt(i) != chars[start + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Names like v1, v2, v3 have consecutive hashes, which would form long
+     * runs under linear probing; Fibonacci hashing scatters them.
+     */
+    private int slot(int hash) {
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    private void grow() {
+        String[] oldTable = table;
+        int[] oldHashes = hashes;
+        int[] oldSymbols = symbols;
+        table = new String[oldTable.length * 2];
+        hashes = new int[oldTable.length * 2];
+        symbols = new int[oldTable.length * 2];
+        shift--;
+        int mask = table.length - 1;
+        for (int j = 0; j < oldTable.length; j++) {
+            if (oldTable[j] == null) continue;
+            int i = slot(oldHashes[j]);
+            while (table[i] != null) i = (i + 1) & mask;
+            table[i] = oldTable[j];
+            hashes[i] = oldHashes[j];
+            symbols[i] = oldSymbols[j];
+        }
+    }
+}
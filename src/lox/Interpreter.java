@@ -1,17 +1,59 @@
 package lox;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+import static lox.Completion.*;
 
-    final Environment globals = new Environment();
-    private Environment env = globals;
-    private boolean isBreakable = false;
-    private boolean breakFlag = false;
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion>, Engine {
 
+    final Environment globals;
+    private final PrintStream out;
+    private Environment env;
+    private Object returnValue;
+
+    /**
+     * Whether global references keep their cell on the node. A tree shared by
+     * interpreters on several threads is left alone, since every interpreter
+     * would keep overwriting the others' cells; they look cells up instead.
+     */
+    boolean cacheGlobals = true;
+
+    /** Whether hot functions are compiled by the Jit; set with --jit. */
+    boolean jit = false;
+    int jitCompiled = 0;
+    int jitDeopts = 0;
 
     public Interpreter() {
+        this(System.out);
+    }
+
+    /**
+     * @param out where print writes
+     */
+    Interpreter(PrintStream out) {
+        this.out = out;
+        this.globals = new Environment();
+        this.env = globals;
+        defineNatives(globals);
+    }
+
+    /**
+     * @param globals global environment to run in, which already has the natives
+     */
+    Interpreter(PrintStream out, Environment globals) {
+        this.out = out;
+        this.globals = globals;
+        this.env = globals;
+    }
+
+    /**
+     * Natives are shared by every engine, so they are defined on whichever
+     * global environment the engine uses.
+     * @param globals global environment to define natives in
+     */
+    static void defineNatives(Environment globals) {
         //god awful code ngl
         globals.define("clock", new LoxCallable() {
             @Override
@@ -27,50 +69,175 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return "<native fn>";
             }
         });
+
+        globals.define("list", new Native(0) {
+            @Override
+            public Object call0(Interpreter interpreter) {
+                return new LoxList();
+            }
+        });
+        globals.define("map", new Native(0) {
+            @Override
+            public Object call0(Interpreter interpreter) {
+                return new LoxMap();
+            }
+        });
+        globals.define("get", new Native(2) {
+            @Override
+            public Object call2(Interpreter interpreter, Object collection, Object key) {
+                if (collection instanceof LoxList list) return list.get(key);
+                if (collection instanceof LoxMap map) return map.get(key);
+                throw new NativeError("Can only get from lists and maps.");
+            }
+        });
+        globals.define("set", new Native(3) {
+            @Override
+            public Object call3(Interpreter interpreter, Object collection, Object key, Object value) {
+                if (collection instanceof LoxList list) {
+                    list.set(key, value);
+                } else if (collection instanceof LoxMap map) {
+                    map.set(key, value);
+                } else {
+                    throw new NativeError("Can only set in lists and maps.");
+                }
+                return value;
+            }
+        });
+        globals.define("push", new Native(2) {
+            @Override
+            public Object call2(Interpreter interpreter, Object collection, Object value) {
+                if (!(collection instanceof LoxList list)) throw new NativeError("Can only push to lists.");
+                list.push(value);
+                return null;
+            }
+        });
+        globals.define("len", new Native(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object collection) {
+                if (collection instanceof LoxList list) return (double) list.size();
+                if (collection instanceof LoxMap map) return (double) map.size();
+                if (collection instanceof CharSequence string) return (double) string.length();
+                throw new NativeError("Can only take the length of lists, maps and strings.");
+            }
+        });
     }
 
+    /**
+     * Each site specializes itself on the operands it sees, with the states of
+     * BinaryNode: the first evaluation settles on numbers, strings (only for
+     * + and the equalities) or generic, and from then on only that guard is
+     * tested before the operator runs. A failed guard makes the site generic.
+     * A tree shared by threads may race on the state; every state is safe to
+     * run from, as each fast path checks its own guard.
+     */
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        switch(expr.op.type) {
+        switch (expr.state) {
+            case BinaryNode.DOUBLES -> {
+                if (left instanceof Double a && right instanceof Double b) return doubles(expr.op.type, a, b);
+            }
+            case BinaryNode.STRINGS -> {
+                if (left instanceof CharSequence a && right instanceof CharSequence b) return strings(expr.op, a, b);
+            }
+            case BinaryNode.GENERIC -> {
+                return binary(expr.op, left, right);
+            }
+        }
+        return specialize(expr, left, right);
+    }
+
+    /**
+     * Slow path: either the first evaluation or a failed guard.
+     */
+    private Object specialize(Expr.Binary expr, Object left, Object right) {
+        TokenType op = expr.op.type;
+        if (expr.state != BinaryNode.UNINITIALIZED) {
+            expr.state = BinaryNode.GENERIC;
+        } else if (left instanceof Double && right instanceof Double) {
+            expr.state = BinaryNode.DOUBLES;
+        } else if (left instanceof CharSequence && right instanceof CharSequence
+                && (op == TokenType.PLUS || op == TokenType.EQUAL_EQUAL || op == TokenType.BANG_EQUAL)) {
+            expr.state = BinaryNode.STRINGS;
+        } else {
+            expr.state = BinaryNode.GENERIC;
+        }
+        return binary(expr.op, left, right);
+    }
+
+    private static Object doubles(TokenType op, double a, double b) {
+        return switch (op) {
+            case PLUS -> a + b;
+            case MINUS -> a - b;
+            case STAR -> a * b;
+            case SLASH -> a / b;
+            case LESS -> a < b;
+            case LESS_EQUAL -> a <= b;
+            case GREATER -> a > b;
+            case GREATER_EQUAL -> a >= b;
+            // Like Double.equals, which is what isEqual does for numbers.
+            case EQUAL_EQUAL -> Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+            case BANG_EQUAL -> Double.doubleToLongBits(a) != Double.doubleToLongBits(b);
+            default -> throw new IllegalStateException("Not a binary operator: " + op);
+        };
+    }
+
+    private static Object strings(Token op, CharSequence a, CharSequence b) {
+        return switch (op.type) {
+            case PLUS -> {
+                if (!Rope.fits(a, b)) throw new RuntimeError(op, Rope.TOO_LONG);
+                yield Rope.concat(a, b);
+            }
+            case EQUAL_EQUAL -> isEqual(a, b);
+            case BANG_EQUAL -> !isEqual(a, b);
+            default -> throw new IllegalStateException("Not specialized for strings: " + op.type);
+        };
+    }
+
+    /**
+     * Full semantics of the operator, including its type errors.
+     */
+    private Object binary(Token op, Object left, Object right) {
+        switch(op.type) {
             case MINUS -> {
-                checkNumberOperands(expr.op, left, right);
+                checkNumberOperands(op, left, right);
                 return (double)left - (double)right;
             }
             case SLASH -> {
-                checkNumberOperands(expr.op, left, right);
+                checkNumberOperands(op, left, right);
                 return (double)left / (double)right;
             }
             case STAR -> {
-                checkNumberOperands(expr.op, left, right);
+                checkNumberOperands(op, left, right);
                 return (double)left * (double)right;
             }
             case PLUS -> {
                 if (left instanceof Double && right instanceof Double) {
                     return (double)left + (double)right;
                 }
-                if (left instanceof String && right instanceof String) {
-                    return (String)left + (String)right;
+                if (left instanceof CharSequence a && right instanceof CharSequence b) {
+                    if (!Rope.fits(a, b)) throw new RuntimeError(op, Rope.TOO_LONG);
+                    return Rope.concat(a, b);
                 }
-                throw new RuntimeError(expr.op,
+                throw new RuntimeError(op,
                         "Operands must be two integers or strings");
             }
             case LESS -> {
-                checkNumberOperands(expr.op, left, right);
+                checkNumberOperands(op, left, right);
                 return (double)left < (double)right;
             }
             case GREATER -> {
-                checkNumberOperands(expr.op, left, right);
+                checkNumberOperands(op, left, right);
                 return (double)left > (double)right;
             }
             case LESS_EQUAL -> {
-                checkNumberOperands(expr.op, left, right);
+                checkNumberOperands(op, left, right);
                 return (double)left <= (double)right;
             }
             case GREATER_EQUAL -> {
-                checkNumberOperands(expr.op, left, right);
+                checkNumberOperands(op, left, right);
                 return (double)left >= (double)right;
             }
             case EQUAL_EQUAL -> {
@@ -84,34 +251,70 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Calls with up to three arguments keep them in locals and go through the
+     * matching fixed-arity entry point, so no argument list is built.
+     */
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
+        List<Expr> args = expr.args;
+
+        try {
+            switch (args.size()) {
+                case 0 -> {
+                    return callable(callee, expr.paren, 0).call0(this);
+                }
+                case 1 -> {
+                    Object a = evaluate(args.get(0));
+                    return callable(callee, expr.paren, 1).call1(this, a);
+                }
+                case 2 -> {
+                    Object a = evaluate(args.get(0));
+                    Object b = evaluate(args.get(1));
+                    return callable(callee, expr.paren, 2).call2(this, a, b);
+                }
+                case 3 -> {
+                    Object a = evaluate(args.get(0));
+                    Object b = evaluate(args.get(1));
+                    Object c = evaluate(args.get(2));
+                    return callable(callee, expr.paren, 3).call3(this, a, b, c);
+                }
+            }
 
-        List<Object> args = new ArrayList<>();
-        for (Expr arg : expr.args) {
-            args.add(evaluate(arg));
+            List<Object> values = new ArrayList<>(args.size());
+            for (Expr arg : args) {
+                values.add(evaluate(arg));
+            }
+            return callable(callee, expr.paren, values.size()).call(this, values);
+        } catch (NativeError error) {
+            // Only ever from the native called here: calls inside the arguments have caught their own.
+            throw new RuntimeError(expr.paren, error.getMessage());
         }
+    }
 
+    /**
+     * Checks, once the arguments are evaluated, that the callee can take them.
+     */
+    private static LoxCallable callable(Object callee, Token paren, int argc) {
         if(!(callee instanceof LoxCallable)) {
-            throw new RuntimeError(expr.paren,
+            throw new RuntimeError(paren,
                     "Can only call functions and classes");
         }
 
         LoxCallable function = (LoxCallable) callee;
 
-        if (args.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " + function.arity() +
-                    " args, but got " + args.size() + " args.");
+        if (argc != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() +
+                    " args, but got " + argc + " args.");
 
         }
-
-        return function.call(this, args);
+        return function;
     }
 
     @Override
     public Object visitGroupingExpr(Expr.Grouping expr) {
-        return evaluate(expr);
+        return evaluate(expr.expression);
     }
 
     @Override
@@ -132,8 +335,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object left = evaluate(expr.left);
 
         if (expr.op.type == TokenType.OR) {
-            if(isTruthLike(expr.left)) return left;
-        } else if(!isTruthLike(expr.left)) return left;
+            if(isTruthLike(left)) return left;
+        } else if(!isTruthLike(left)) return left;
 
         return evaluate(expr.right);
     }
@@ -156,13 +359,34 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        env.assign(expr.name, value);
+        if (expr.depth < 0) {
+            Global global = expr.global;
+            if (global == null || global.table != globals) {
+                global = globals.cell(expr.name.symbol);
+                if (cacheGlobals) expr.global = global;
+            }
+            global.assign(expr.name, value);
+        } else {
+            env.assignAt(expr.depth, expr.slot, value);
+        }
         return value;
     }
 
+    /**
+     * A global reference looks its cell up by name only the first time; after
+     * that the cell cached on the node is used for as long as it belongs to
+     * this interpreter's globals.
+     */
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return env.get(expr.name);
+        if (expr.depth >= 0) return env.getAt(expr.depth, expr.slot);
+
+        Global global = expr.global;
+        if (global == null || global.table != globals) {
+            global = globals.cell(expr.name.symbol);
+            if (cacheGlobals) expr.global = global;
+        }
+        return global.get(expr.name);
     }
 
     private Object evaluate(Expr expr) {
@@ -171,92 +395,122 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     /**
      * Note that the statements live inside the block.
-     * Therefore, this code executes a block within a lexical scope
+     * Therefore, this code executes a block within a lexical scope.
+     * A block that declares nothing was given no scope by the Resolver, so it
+     * runs in the current environment.
      * @param stmt block statement
-     * @return null
+     * @return how the block finished
      */
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(env));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.locals == 0) {
+            return executeBlock(stmt.statements, env);
+        }
+        return executeBlock(stmt.statements, new Environment(env, stmt.locals));
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt);
-        env.define(stmt.name.lexeme, function);
-        return null;
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        LoxFunction function = new LoxFunction(stmt, env);
+        define(stmt.name, stmt.slot, function);
+        return NORMAL;
     }
 
-
-
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Completion visitIfStmt(Stmt.If stmt) {
         if(isTruthLike(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         }
         else if(stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
 
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.print(stringify(value) + System.lineSeparator());
-        return null;
+        out.print(stringify(value) + System.lineSeparator());
+        return NORMAL;
     }
 
+    /**
+     * The value is left in returnValue for the LoxFunction being called,
+     * which takes it once the RETURN has unwound its body.
+     */
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        returnValue = stmt.value == null ? null : evaluate(stmt.value);
+        return RETURN;
+    }
+
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    @Override
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
 
-        env.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt.name, stmt.slot, value);
+        return NORMAL;
     }
 
-    @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        isBreakable = true;
-        while(isTruthLike(evaluate(stmt.condition)) && !breakFlag) {
-            execute(stmt.body);
+    private void define(Token name, int slot, Object value) {
+        if (slot < 0) {
+            globals.cell(name.symbol).define(value);
+        } else {
+            env.define(slot, value);
         }
-
-        isBreakable = false;
-        breakFlag = false;
-        return null;
     }
 
+    /**
+     * A BREAK from the body ends this loop only; a RETURN keeps unwinding.
+     */
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
-        if(isBreakable) {
-             breakFlag = true;
-        } else {
-            throw (new RuntimeError(stmt.self, "Break statement not enclosed"));
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        while(isTruthLike(evaluate(stmt.condition))) {
+            Completion completion = execute(stmt.body);
+            if (completion == BREAK) break;
+            if (completion == RETURN) return RETURN;
         }
-        return null;
+        return NORMAL;
     }
 
-    private boolean isTruthLike(Object object) {
+    /**
+     * The Resolver has already rejected breaks outside of a loop.
+     */
+    @Override
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return BREAK;
+    }
+
+    static boolean isTruthLike(Object object) {
         if (object==null) return false;
         if (object instanceof Boolean) return (boolean)object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b){
+    static boolean isEqual(Object a, Object b){
         if(a==null && b==null) return true;
         if (a==null) return false;
+        // A string made by + may be a Rope, equal to any string with the same chars.
+        if (a instanceof Rope || b instanceof Rope) {
+            return a instanceof CharSequence x && b instanceof CharSequence y
+                    && x.length() == y.length() && x.toString().equals(y.toString());
+        }
         return a.equals(b);
     }
 
@@ -275,25 +529,33 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     void interpret(Expr expr) {
         try {
             Object value = evaluate(expr);
-            System.out.println(stringify(value));
+            out.println(stringify(value));
         }
         catch (RuntimeError error) {
             Lox.runtimeError(error);
         }
     }
 
-    protected void interpret(List<Stmt> stmts) {
+    @Override
+    public void interpret(List<Stmt> stmts) {
         try {
-            for (Stmt stmt : stmts) {
-                execute(stmt);
-            }
+            run(stmts);
         } catch (RuntimeError error) {
             Lox.runtimeError(error);
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    /**
+     * Like interpret, but leaves a runtime error to the caller.
+     */
+    void run(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            execute(stmt);
+        }
+    }
+
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
     }
 
     /**
@@ -303,23 +565,25 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
      * Exits the enviorment in the end.
      * @param stmts stmts to be executed
      * @param env enviorment that statments are located in
+     * @return NORMAL, or the first other completion, which stops the block
      */
-    protected void executeBlock(List<Stmt> stmts, Environment env) {
+    protected Completion executeBlock(List<Stmt> stmts, Environment env) {
         Environment prev = this.env;
 
         try {
             this.env = env;
 
             for (Stmt stmt : stmts) {
-                if (breakFlag) break;
-                execute(stmt);
+                Completion completion = execute(stmt);
+                if (completion != NORMAL) return completion;
             }
+            return NORMAL;
         } finally {
             this.env = prev;
         }
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
         if (object instanceof Double) {
@@ -0,0 +1,666 @@
+package lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static lox.JitClassWriter.Code.*;
+
+/**
+ * Second tier for hot LoxFunctions, enabled with --jit.
+ * After Jit.THRESHOLD interpreted calls, a function body is compiled to a JVM
+ * class, defined as a hidden class, and HotSpot takes it from there.
+ * <br>
+ * Locals become JVM locals instead of Environment slots. A local is kept as an
+ * unboxed double when every value ever stored in it is statically a number.
+ * For parameters, that is assumed when the profile has only ever seen numbers
+ * for them. The compiled code checks those assumptions on entry and returns
+ * JitRuntime.DEOPT before doing anything else if they fail, so the call can
+ * simply be run by the tree walker instead. Everything else goes through
+ * JitRuntime, with the Interpreter's semantics.
+ * <br>
+ * Functions that declare functions (closures) are not compiled.
+ */
+final class Jit implements Expr.Visitor<Jit.Type>, Stmt.Visitor<Void> {
+    static final int THRESHOLD = 1000;
+    static final int MAX_DEOPTS = 3;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final String RUNTIME = "lox/JitRuntime";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String TOKEN_DESC = "Llox/Token;";
+    private static final String INVOKE_DESC =
+            "(Llox/Interpreter;Llox/Environment;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private static final int THIS = 0;
+    private static final int INTERPRETER = 1;
+    private static final int CLOSURE = 2;
+    private static final int ARGS = 3;
+
+    enum Type { DOUBLE, BOOL, OBJECT }
+
+    /**
+     * A local of the function being compiled.
+     */
+    private static final class Local {
+        boolean isDouble;
+        boolean isParam;
+        final List<Expr> stores = new ArrayList<>();
+        int index;
+    }
+
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final Stmt.Function declaration;
+    private final Environment globals;
+    private final String className;
+    private final JitClassWriter writer = new JitClassWriter();
+    private final JitClassWriter.Code code = new JitClassWriter.Code(ARGS + 1);
+    private final List<Object> constants = new ArrayList<>();
+
+    private final List<Local> locals = new ArrayList<>();
+    private final List<Local[]> frames = new ArrayList<>();
+    private final Map<Object, Local> localOf = new IdentityHashMap<>();
+    private final Map<Expr, Integer> outerDepth = new IdentityHashMap<>();
+    private final List<JitClassWriter.Label> loopEnds = new ArrayList<>();
+
+    private Jit(Stmt.Function declaration, Environment globals) {
+        this.declaration = declaration;
+        this.globals = globals;
+        this.className = "lox/Jit$" + declaration.name.lexeme.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    /**
+     * @param numberArgs for each parameter, whether only numbers have been seen for it
+     * @param globals global table whose cells the code reads and writes directly
+     * @return the compiled body, or null if it can't be compiled
+     */
+    static JitCode compile(Stmt.Function declaration, boolean[] numberArgs, Environment globals) {
+        try {
+            return new Jit(declaration, globals).generate(numberArgs);
+        } catch (Unsupported | IllegalStateException | LinkageError e) {
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JitCode generate(boolean[] numberArgs) throws Throwable {
+        analyze(numberArgs);
+
+        writer.field(JitClassWriter.ACC_PRIVATE | JitClassWriter.ACC_FINAL, "k", "[Ljava/lang/Object;");
+
+        JitClassWriter.Code init = new JitClassWriter.Code(2);
+        init.local(ALOAD, THIS, 1);
+        init.invoke(INVOKESPECIAL, writer.methodRef(OBJECT, "<init>", "()V"), -1);
+        init.local(ALOAD, THIS, 1);
+        init.local(ALOAD, 1, 1);
+        init.op(PUTFIELD, writer.fieldRef(className, "k", "[Ljava/lang/Object;"), -2);
+        init.op(RETURN, 0);
+        writer.method(JitClassWriter.ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", init);
+
+        JitClassWriter.Label deopt = new JitClassWriter.Label();
+        emitPrologue(deopt);
+        for (Stmt stmt : declaration.body) {
+            emit(stmt);
+        }
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+
+        code.mark(deopt);
+        code.op(GETSTATIC, writer.fieldRef(RUNTIME, "DEOPT", "Ljava/lang/Object;"), 1);
+        code.op(ARETURN, -1);
+
+        if (code.length() > 0xffff) return null;
+        writer.method(JitClassWriter.ACC_PUBLIC, "invoke", INVOKE_DESC, code);
+
+        byte[] bytes = writer.toByteArray(className, OBJECT, "lox/JitCode");
+        MethodHandles.Lookup lookup = LOOKUP.defineHiddenClass(bytes, true);
+        MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                MethodType.methodType(void.class, Object[].class));
+        return (JitCode) constructor.invoke(constants.toArray());
+    }
+
+    /**
+     * Guards the parameters assumed to be numbers, then moves every argument
+     * into its JVM local.
+     */
+    private void emitPrologue(JitClassWriter.Label deopt) {
+        if (frames.isEmpty()) return;
+        Local[] params = frames.get(0);
+
+        for (int i = 0; i < declaration.params.size(); i++) {
+            if (!params[i].isDouble) continue;
+            loadArg(i);
+            code.op(INSTANCEOF, writer.classRef("java/lang/Double"), 0);
+            code.jump(IFEQ, deopt);
+        }
+
+        for (int i = 0; i < declaration.params.size(); i++) {
+            loadArg(i);
+            if (params[i].isDouble) {
+                code.op(CHECKCAST, writer.classRef("java/lang/Double"), 0);
+                code.invoke(INVOKEVIRTUAL, writer.methodRef("java/lang/Double", "doubleValue", "()D"), 1);
+                code.local(DSTORE, params[i].index, -2);
+            } else {
+                code.local(ASTORE, params[i].index, -1);
+            }
+        }
+    }
+
+    private void loadArg(int i) {
+        code.local(ALOAD, ARGS, 1);
+        code.op(SIPUSH, i, 1);
+        code.op(AALOAD, -1);
+    }
+
+    // Analysis
+
+    /**
+     * Maps every local of the function to a JVM local, then narrows the locals
+     * that can stay unboxed doubles until nothing changes.
+     */
+    private void analyze(boolean[] numberArgs) {
+        if (declaration.locals > 0) {
+            Local[] frame = new Local[declaration.locals];
+            frames.add(frame);
+            for (int i = 0; i < declaration.params.size(); i++) {
+                Local param = newLocal();
+                param.isParam = true;
+                param.isDouble = numberArgs[i];
+                frame[i] = param;
+            }
+        }
+        scan(declaration.body);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Local local : locals) {
+                if (!local.isDouble) continue;
+                for (Expr store : local.stores) {
+                    if (store == null || typeOf(store) != Type.DOUBLE) {
+                        local.isDouble = false;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        int next = ARGS + 1;
+        for (Local local : locals) {
+            local.index = next;
+            next += local.isDouble ? 2 : 1;
+        }
+    }
+
+    private Local newLocal() {
+        Local local = new Local();
+        local.isDouble = true;
+        locals.add(local);
+        return local;
+    }
+
+    private void scan(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            scan(stmt);
+        }
+    }
+
+    private void scan(Stmt stmt) {
+        if (stmt instanceof Stmt.Block block) {
+            if (block.locals > 0) frames.add(new Local[block.locals]);
+            scan(block.statements);
+            if (block.locals > 0) frames.remove(frames.size() - 1);
+        } else if (stmt instanceof Stmt.Expression expression) {
+            scan(expression.expression);
+        } else if (stmt instanceof Stmt.If ifStmt) {
+            scan(ifStmt.condition);
+            scan(ifStmt.thenBranch);
+            if (ifStmt.elseBranch != null) scan(ifStmt.elseBranch);
+        } else if (stmt instanceof Stmt.Print print) {
+            scan(print.expression);
+        } else if (stmt instanceof Stmt.Return ret) {
+            if (ret.value != null) scan(ret.value);
+        } else if (stmt instanceof Stmt.Var var) {
+            if (var.initializer != null) scan(var.initializer);
+            Local[] frame = frames.get(frames.size() - 1);
+            if (frame[var.slot] == null) frame[var.slot] = newLocal();
+            frame[var.slot].stores.add(var.initializer);
+            localOf.put(var, frame[var.slot]);
+        } else if (stmt instanceof Stmt.While whileStmt) {
+            scan(whileStmt.condition);
+            scan(whileStmt.body);
+        } else if (!(stmt instanceof Stmt.Break)) {
+            throw new Unsupported();
+        }
+    }
+
+    private void scan(Expr expr) {
+        if (expr instanceof Expr.Assign assign) {
+            scan(assign.value);
+            Local local = resolve(assign, assign.depth, assign.slot);
+            if (local != null) local.stores.add(assign.value);
+        } else if (expr instanceof Expr.Binary binary) {
+            scan(binary.left);
+            scan(binary.right);
+        } else if (expr instanceof Expr.Call call) {
+            scan(call.callee);
+            for (Expr arg : call.args) {
+                scan(arg);
+            }
+        } else if (expr instanceof Expr.Grouping grouping) {
+            scan(grouping.expression);
+        } else if (expr instanceof Expr.Logical logical) {
+            scan(logical.left);
+            scan(logical.right);
+        } else if (expr instanceof Expr.Unary unary) {
+            scan(unary.right);
+        } else if (expr instanceof Expr.Variable variable) {
+            resolve(variable, variable.depth, variable.slot);
+        }
+    }
+
+    /**
+     * @return the function's own local the reference resolves to, or null if it
+     * is a global or lives in the closure
+     */
+    private Local resolve(Expr expr, int depth, int slot) {
+        if (depth < 0) return null;
+        if (depth >= frames.size()) {
+            outerDepth.put(expr, depth - frames.size());
+            return null;
+        }
+        Local local = frames.get(frames.size() - 1 - depth)[slot];
+        localOf.put(expr, local);
+        return local;
+    }
+
+    /**
+     * Static type of an expression, given what is currently known about locals.
+     * Code generation produces exactly this type for every expression.
+     */
+    private Type typeOf(Expr expr) {
+        if (expr instanceof Expr.Literal literal) {
+            if (literal.value instanceof Double) return Type.DOUBLE;
+            if (literal.value instanceof Boolean) return Type.BOOL;
+            return Type.OBJECT;
+        }
+        if (expr instanceof Expr.Grouping grouping) return typeOf(grouping.expression);
+        if (expr instanceof Expr.Variable || expr instanceof Expr.Assign) {
+            Local local = localOf.get(expr);
+            return local != null && local.isDouble ? Type.DOUBLE : Type.OBJECT;
+        }
+        if (expr instanceof Expr.Binary binary) {
+            boolean numbers = typeOf(binary.left) == Type.DOUBLE && typeOf(binary.right) == Type.DOUBLE;
+            return switch (binary.op.type) {
+                case PLUS, MINUS, STAR, SLASH -> numbers ? Type.DOUBLE : Type.OBJECT;
+                default -> Type.BOOL;
+            };
+        }
+        if (expr instanceof Expr.Unary unary) {
+            if (unary.op.type == TokenType.BANG) return Type.BOOL;
+            return typeOf(unary.right) == Type.DOUBLE ? Type.DOUBLE : Type.OBJECT;
+        }
+        return Type.OBJECT;
+    }
+
+    // Code generation
+
+    private void emit(Stmt stmt) {
+        code.resetStack();
+        stmt.accept(this);
+    }
+
+    private Type emit(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void emitObject(Expr expr) {
+        box(emit(expr));
+    }
+
+    private void emitCondition(Expr expr) {
+        Type type = emit(expr);
+        switch (type) {
+            case OBJECT -> code.invoke(INVOKESTATIC, writer.methodRef(RUNTIME, "truthy", "(Ljava/lang/Object;)Z"), 0);
+            case DOUBLE -> {
+                code.op(POP2, -2);
+                code.op(ICONST_1, 1);
+            }
+            case BOOL -> {}
+        }
+    }
+
+    private void box(Type type) {
+        switch (type) {
+            case DOUBLE -> code.invoke(INVOKESTATIC,
+                    writer.methodRef("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"), -1);
+            case BOOL -> code.invoke(INVOKESTATIC,
+                    writer.methodRef("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;"), 0);
+            case OBJECT -> {}
+        }
+    }
+
+    private void loadConstant(Object value, String type) {
+        int index = constants.size();
+        constants.add(value);
+        code.local(ALOAD, THIS, 1);
+        code.op(GETFIELD, writer.fieldRef(className, "k", "[Ljava/lang/Object;"), 0);
+        code.op(SIPUSH, index, 1);
+        code.op(AALOAD, -1);
+        code.op(CHECKCAST, writer.classRef(type), 0);
+    }
+
+    private void loadToken(Token token) {
+        loadConstant(token, "lox/Token");
+    }
+
+    private void runtime(String name, String descriptor, int delta) {
+        code.invoke(INVOKESTATIC, writer.methodRef(RUNTIME, name, descriptor), delta);
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        Local local = localOf.get(expr);
+        if (local != null) {
+            if (local.isDouble) {
+                emit(expr.value);
+                code.op(DUP2, 2);
+                code.local(DSTORE, local.index, -2);
+                return Type.DOUBLE;
+            }
+            emitObject(expr.value);
+            code.op(DUP, 1);
+            code.local(ASTORE, local.index, -1);
+            return Type.OBJECT;
+        }
+
+        Integer depth = outerDepth.get(expr);
+        if (depth != null) {
+            code.local(ALOAD, CLOSURE, 1);
+            code.op(SIPUSH, depth, 1);
+            code.op(SIPUSH, expr.slot, 1);
+            emitObject(expr.value);
+            runtime("assignAt", "(Llox/Environment;IILjava/lang/Object;)Ljava/lang/Object;", -3);
+            return Type.OBJECT;
+        }
+
+        loadConstant(globals.cell(expr.name.symbol), "lox/Global");
+        loadToken(expr.name);
+        emitObject(expr.value);
+        runtime("setGlobal", "(Llox/Global;" + TOKEN_DESC + "Ljava/lang/Object;)Ljava/lang/Object;", -2);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        if (typeOf(expr.left) == Type.DOUBLE && typeOf(expr.right) == Type.DOUBLE) {
+            emit(expr.left);
+            emit(expr.right);
+            switch (expr.op.type) {
+                case PLUS -> code.op(DADD, -2);
+                case MINUS -> code.op(DSUB, -2);
+                case STAR -> code.op(DMUL, -2);
+                case SLASH -> code.op(DDIV, -2);
+                case LESS -> compare(DCMPG, IFGE);
+                case LESS_EQUAL -> compare(DCMPG, IFGT);
+                case GREATER -> compare(DCMPL, IFLE);
+                case GREATER_EQUAL -> compare(DCMPL, IFLT);
+                case EQUAL_EQUAL -> runtime("equal", "(DD)Z", -3);
+                case BANG_EQUAL -> {
+                    runtime("equal", "(DD)Z", -3);
+                    not();
+                }
+            }
+            return typeOf(expr);
+        }
+
+        emitObject(expr.left);
+        emitObject(expr.right);
+        String arithmetic = "(Ljava/lang/Object;Ljava/lang/Object;" + TOKEN_DESC + ")Ljava/lang/Object;";
+        String comparison = "(Ljava/lang/Object;Ljava/lang/Object;" + TOKEN_DESC + ")Z";
+        switch (expr.op.type) {
+            case EQUAL_EQUAL -> runtime("equal", "(Ljava/lang/Object;Ljava/lang/Object;)Z", -1);
+            case BANG_EQUAL -> {
+                runtime("equal", "(Ljava/lang/Object;Ljava/lang/Object;)Z", -1);
+                not();
+            }
+            default -> {
+                loadToken(expr.op);
+                switch (expr.op.type) {
+                    case PLUS -> runtime("add", arithmetic, -2);
+                    case MINUS -> runtime("subtract", arithmetic, -2);
+                    case STAR -> runtime("multiply", arithmetic, -2);
+                    case SLASH -> runtime("divide", arithmetic, -2);
+                    case LESS -> runtime("less", comparison, -2);
+                    case LESS_EQUAL -> runtime("lessEqual", comparison, -2);
+                    case GREATER -> runtime("greater", comparison, -2);
+                    case GREATER_EQUAL -> runtime("greaterEqual", comparison, -2);
+                }
+            }
+        }
+        return typeOf(expr);
+    }
+
+    /**
+     * Turns a double comparison into 0 or 1. The NaN behaviour of the dcmp
+     * instruction is picked so that any comparison with NaN is false.
+     */
+    private void compare(int dcmp, int jumpIfFalse) {
+        JitClassWriter.Label isFalse = new JitClassWriter.Label();
+        JitClassWriter.Label end = new JitClassWriter.Label();
+        code.op(dcmp, -3);
+        code.jump(jumpIfFalse, isFalse);
+        code.op(ICONST_1, 1);
+        code.jump(GOTO, end);
+        code.mark(isFalse);
+        code.op(ICONST_0, 1);
+        code.mark(end);
+    }
+
+    private void not() {
+        code.op(ICONST_1, 1);
+        code.op(IXOR, -1);
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        code.local(ALOAD, INTERPRETER, 1);
+        emitObject(expr.callee);
+        code.op(SIPUSH, expr.args.size(), 1);
+        code.op(ANEWARRAY, writer.classRef(OBJECT), 0);
+        for (int i = 0; i < expr.args.size(); i++) {
+            code.op(DUP, 1);
+            code.op(SIPUSH, i, 1);
+            emitObject(expr.args.get(i));
+            code.op(AASTORE, -3);
+        }
+        loadToken(expr.paren);
+        runtime("call", "(Llox/Interpreter;Ljava/lang/Object;[Ljava/lang/Object;" + TOKEN_DESC
+                + ")Ljava/lang/Object;", -3);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return emit(expr.expression);
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            code.op(ACONST_NULL, 1);
+        } else if (expr.value instanceof Boolean b) {
+            code.op(b ? ICONST_1 : ICONST_0, 1);
+        } else if (expr.value instanceof Double d) {
+            code.op(LDC2_W, writer.doubleConst(d), 2);
+        } else {
+            code.op(LDC_W, writer.string((String) expr.value), 1);
+        }
+        return typeOf(expr);
+    }
+
+    /**
+     * The left operand stays on the stack as the result unless the right one
+     * has to be evaluated.
+     */
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        JitClassWriter.Label end = new JitClassWriter.Label();
+        emitObject(expr.left);
+        code.op(DUP, 1);
+        runtime("truthy", "(Ljava/lang/Object;)Z", 0);
+        code.jump(expr.op.type == TokenType.OR ? IFNE : IFEQ, end);
+        code.op(POP, -1);
+        emitObject(expr.right);
+        code.mark(end);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        if (expr.op.type == TokenType.BANG) {
+            emitCondition(expr.right);
+            not();
+            return Type.BOOL;
+        }
+
+        if (typeOf(expr.right) == Type.DOUBLE) {
+            emit(expr.right);
+            code.op(DNEG, 0);
+            return Type.DOUBLE;
+        }
+        emitObject(expr.right);
+        loadToken(expr.op);
+        runtime("negate", "(Ljava/lang/Object;" + TOKEN_DESC + ")Ljava/lang/Object;", -1);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        Local local = localOf.get(expr);
+        if (local != null) {
+            if (local.isDouble) {
+                code.local(DLOAD, local.index, 2);
+                return Type.DOUBLE;
+            }
+            code.local(ALOAD, local.index, 1);
+            return Type.OBJECT;
+        }
+
+        Integer depth = outerDepth.get(expr);
+        if (depth != null) {
+            code.local(ALOAD, CLOSURE, 1);
+            code.op(SIPUSH, depth, 1);
+            code.op(SIPUSH, expr.slot, 1);
+            runtime("getAt", "(Llox/Environment;II)Ljava/lang/Object;", -2);
+            return Type.OBJECT;
+        }
+
+        loadConstant(globals.cell(expr.name.symbol), "lox/Global");
+        loadToken(expr.name);
+        code.invoke(INVOKEVIRTUAL, writer.methodRef("lox/Global", "get", "(" + TOKEN_DESC + ")Ljava/lang/Object;"), -1);
+        return Type.OBJECT;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            emit(statement);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        Type type = emit(stmt.expression);
+        code.op(type == Type.DOUBLE ? POP2 : POP, type == Type.DOUBLE ? -2 : -1);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        JitClassWriter.Label elseBranch = new JitClassWriter.Label();
+        JitClassWriter.Label end = new JitClassWriter.Label();
+
+        emitCondition(stmt.condition);
+        code.jump(IFEQ, elseBranch);
+        emit(stmt.thenBranch);
+        code.jump(GOTO, end);
+        code.mark(elseBranch);
+        if (stmt.elseBranch != null) emit(stmt.elseBranch);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        emitObject(stmt.expression);
+        runtime("print", "(Ljava/lang/Object;)V", -1);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            code.op(ACONST_NULL, 1);
+        } else {
+            emitObject(stmt.value);
+        }
+        code.op(ARETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        Local local = localOf.get(stmt);
+        if (stmt.initializer == null) {
+            code.op(ACONST_NULL, 1);
+            code.local(ASTORE, local.index, -1);
+        } else if (local.isDouble) {
+            emit(stmt.initializer);
+            code.local(DSTORE, local.index, -2);
+        } else {
+            emitObject(stmt.initializer);
+            code.local(ASTORE, local.index, -1);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        JitClassWriter.Label start = new JitClassWriter.Label();
+        JitClassWriter.Label end = new JitClassWriter.Label();
+
+        code.mark(start);
+        emitCondition(stmt.condition);
+        code.jump(IFEQ, end);
+        loopEnds.add(end);
+        emit(stmt.body);
+        loopEnds.remove(loopEnds.size() - 1);
+        code.jump(GOTO, start);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        code.jump(GOTO, loopEnds.get(loopEnds.size() - 1));
+        return null;
+    }
+}
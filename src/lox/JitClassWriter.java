@@ -0,0 +1,344 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a class file writer for the JIT.
+ * Classes are written as version 49 (Java 5) so that they need no
+ * StackMapTable; the JVM verifies them by type inference instead.
+ */
+final class JitClassWriter {
+    private static final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    int utf8(String value) {
+        return entry("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        }, 1);
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        }, 1);
+    }
+
+    int string(String value) {
+        int utf = utf8(value);
+        return entry("S" + value, out -> {
+            out.writeByte(8);
+            out.writeShort(utf);
+        }, 1);
+    }
+
+    int doubleConst(double value) {
+        return entry("D" + Double.doubleToRawLongBits(value), out -> {
+            out.writeByte(6);
+            out.writeDouble(value);
+        }, 2);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int owned = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ":" + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        }, 1);
+        return entry(tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(owned);
+            out.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, EntryWriter writer, int size) {
+        Integer existing = poolIndex.get(key);
+        if (existing != null) return existing;
+        try {
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        int index = poolCount;
+        poolCount += size;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    void method(int access, String name, String descriptor, Code code) {
+        int codeName = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+
+            byte[] body = code.toByteArray();
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length);
+            out.writeShort(code.maxStack());
+            out.writeShort(code.maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray(String thisClass, String superClass, String... interfaces) {
+        int thisIndex = classRef(thisClass);
+        int superIndex = classRef(superClass);
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceIndexes[i] = classRef(interfaces[i]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndexes.length);
+            for (int index : interfaceIndexes) {
+                out.writeShort(index);
+            }
+
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A branch target. Jumps to it are patched once its position is known.
+     */
+    static final class Label {
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /**
+     * Bytecode of one method. Stack depth is tracked linearly, instruction by
+     * instruction; callers reset it at statement boundaries, where the operand
+     * stack is always empty, so merges at labels can only make it overestimate.
+     */
+    static final class Code {
+        static final int NOP = 0x00;
+        static final int ACONST_NULL = 0x01;
+        static final int ICONST_0 = 0x03;
+        static final int ICONST_1 = 0x04;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int DLOAD = 0x18;
+        static final int ALOAD = 0x19;
+        static final int DSTORE = 0x39;
+        static final int ASTORE = 0x3a;
+        static final int AALOAD = 0x32;
+        static final int AASTORE = 0x53;
+        static final int POP = 0x57;
+        static final int POP2 = 0x58;
+        static final int DUP = 0x59;
+        static final int DUP2 = 0x5c;
+        static final int DADD = 0x63;
+        static final int DSUB = 0x67;
+        static final int DMUL = 0x6b;
+        static final int DDIV = 0x6f;
+        static final int DNEG = 0x77;
+        static final int IXOR = 0x82;
+        static final int LCMP = 0x94;
+        static final int DCMPL = 0x97;
+        static final int DCMPG = 0x98;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int IFLT = 0x9b;
+        static final int IFGE = 0x9c;
+        static final int IFGT = 0x9d;
+        static final int IFLE = 0x9e;
+        static final int GOTO = 0xa7;
+        static final int ARETURN = 0xb0;
+        static final int RETURN = 0xb1;
+        static final int GETSTATIC = 0xb2;
+        static final int GETFIELD = 0xb4;
+        static final int PUTFIELD = 0xb5;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int ANEWARRAY = 0xbd;
+        static final int CHECKCAST = 0xc0;
+        static final int INSTANCEOF = 0xc1;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int depth = 0;
+        private int maxDepth = 0;
+        int maxLocals;
+
+        Code(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        int length() {
+            return bytes.size();
+        }
+
+        private int maxStack() {
+            return maxDepth;
+        }
+
+        void resetStack() {
+            depth = 0;
+        }
+
+        /**
+         * @param delta change to the operand stack depth, in slots
+         */
+        void op(int opcode, int delta) {
+            bytes.write(opcode);
+            stack(delta);
+        }
+
+        void op(int opcode, int operand, int delta) {
+            bytes.write(opcode);
+            bytes.write(operand >> 8);
+            bytes.write(operand);
+            stack(delta);
+        }
+
+        void local(int opcode, int index, int delta) {
+            if (index > 0xff) {
+                bytes.write(0xc4); // wide
+                op(opcode, index, delta);
+            } else {
+                bytes.write(opcode);
+                bytes.write(index);
+                stack(delta);
+            }
+            maxLocals = Math.max(maxLocals, index + (opcode == DLOAD || opcode == DSTORE ? 2 : 1));
+        }
+
+        void invoke(int opcode, int methodRef, int delta) {
+            op(opcode, methodRef, delta);
+        }
+
+        void invokeInterface(int methodRef, int argSlots, int delta) {
+            bytes.write(0xb9);
+            bytes.write(methodRef >> 8);
+            bytes.write(methodRef);
+            bytes.write(argSlots + 1);
+            bytes.write(0);
+            stack(delta);
+        }
+
+        void jump(int opcode, Label target) {
+            int at = bytes.size();
+            target.jumps.add(at);
+            if (!labels.contains(target)) labels.add(target);
+            op(opcode, 0, opcode == GOTO ? 0 : -1);
+        }
+
+        void mark(Label label) {
+            label.position = bytes.size();
+            if (!labels.contains(label)) labels.add(label);
+        }
+
+        private void stack(int delta) {
+            depth += delta;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * @return the bytecode, with every jump patched
+         * @throws IllegalStateException if a jump does not fit in 16 bits
+         */
+        byte[] toByteArray() {
+            byte[] code = bytes.toByteArray();
+            for (Label label : labels) {
+                for (int at : label.jumps) {
+                    int offset = label.position - at;
+                    if (offset != (short) offset) {
+                        throw new IllegalStateException("Jump out of range");
+                    }
+                    code[at + 1] = (byte) (offset >> 8);
+                    code[at + 2] = (byte) offset;
+                }
+            }
+            return code;
+        }
+    }
+}
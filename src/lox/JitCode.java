@@ -0,0 +1,10 @@
+package lox;
+
+/**
+ * Entry point of a function body compiled to a JVM class by the Jit.
+ * Returns JitRuntime.DEOPT, before doing anything else, when the arguments do
+ * not match the types the code was specialized for.
+ */
+interface JitCode {
+    Object invoke(Interpreter interpreter, Environment closure, Object[] args);
+}
@@ -0,0 +1,121 @@
+package lox;
+
+import java.util.Arrays;
+
+/**
+ * Operations called from JIT-compiled code when the types are not known
+ * statically. They have exactly the semantics, and the errors, of the
+ * corresponding Interpreter visit methods.
+ */
+final class JitRuntime {
+    /**
+     * Returned by compiled code whose type guards failed on entry.
+     */
+    static final Object DEOPT = new Object();
+
+    private JitRuntime() {}
+
+    static Object add(Object left, Object right, Token op) {
+        if (left instanceof Double a && right instanceof Double b) return a + b;
+        if (left instanceof CharSequence a && right instanceof CharSequence b) {
+            if (!Rope.fits(a, b)) throw new RuntimeError(op, Rope.TOO_LONG);
+            return Rope.concat(a, b);
+        }
+        throw new RuntimeError(op, "Operands must be two integers or strings");
+    }
+
+    static Object subtract(Object left, Object right, Token op) {
+        return number(left, op) - number(right, op);
+    }
+
+    static Object multiply(Object left, Object right, Token op) {
+        return number(left, op) * number(right, op);
+    }
+
+    static Object divide(Object left, Object right, Token op) {
+        return number(left, op) / number(right, op);
+    }
+
+    static boolean less(Object left, Object right, Token op) {
+        return number(left, op) < number(right, op);
+    }
+
+    static boolean lessEqual(Object left, Object right, Token op) {
+        return number(left, op) <= number(right, op);
+    }
+
+    static boolean greater(Object left, Object right, Token op) {
+        return number(left, op) > number(right, op);
+    }
+
+    static boolean greaterEqual(Object left, Object right, Token op) {
+        return number(left, op) >= number(right, op);
+    }
+
+    /**
+     * Checks both operands are numbers before either is used.
+     */
+    private static double number(Object operand, Token op) {
+        if (operand instanceof Double d) return d;
+        throw new RuntimeError(op, "Operands must be a number.");
+    }
+
+    static Object negate(Object operand, Token op) {
+        if (operand instanceof Double d) return -d;
+        throw new RuntimeError(op, "Operand must be a number.");
+    }
+
+    static boolean equal(Object left, Object right) {
+        return Interpreter.isEqual(left, right);
+    }
+
+    /**
+     * Same as Double.equals, which is what isEqual uses for numbers.
+     */
+    static boolean equal(double left, double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    static boolean truthy(Object value) {
+        return Interpreter.isTruthLike(value);
+    }
+
+    static void print(Object value) {
+        System.out.print(Interpreter.stringify(value) + System.lineSeparator());
+    }
+
+    static Object setGlobal(Global global, Token name, Object value) {
+        global.assign(name, value);
+        return value;
+    }
+
+    static Object getAt(Environment env, int depth, int slot) {
+        return env.getAt(depth, slot);
+    }
+
+    static Object assignAt(Environment env, int depth, int slot, Object value) {
+        env.assignAt(depth, slot, value);
+        return value;
+    }
+
+    static Object call(Interpreter interpreter, Object callee, Object[] args, Token paren) {
+        if (!(callee instanceof LoxCallable function)) {
+            throw new RuntimeError(paren, "Can only call functions and classes");
+        }
+        if (args.length != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() +
+                    " args, but got " + args.length + " args.");
+        }
+        try {
+            return switch (args.length) {
+                case 0 -> function.call0(interpreter);
+                case 1 -> function.call1(interpreter, args[0]);
+                case 2 -> function.call2(interpreter, args[0], args[1]);
+                case 3 -> function.call3(interpreter, args[0], args[1], args[2]);
+                default -> function.call(interpreter, Arrays.asList(args));
+            };
+        } catch (NativeError error) {
+            throw new RuntimeError(paren, error.getMessage());
+        }
+    }
+}
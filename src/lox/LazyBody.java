@@ -0,0 +1,91 @@
+package lox;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Body of a top-level function that the Parser skipped with --lazy, keeping
+ * only where its tokens start once it had checked that its braces balance.
+ * It is parsed, optimized and resolved the first time anything reads it,
+ * which for the Interpreter is the first call, so a function that is never
+ * called costs no more than scanning it. Only top-level functions are skipped:
+ * their bodies resolve the same whenever they are parsed, as they can only
+ * see their own locals and globals.
+ * <br>
+ * That happens while the program runs, after whatever reported the script's
+ * compile errors has been read, as BatchLoader's ErrorLog is. So syntax errors
+ * in the body go to Lox.CONSOLE, where runtime errors go too, and every call
+ * fails with a RuntimeError. Only the command line parses lazily; LoxEngine
+ * parses every body up front.
+ * The TokenBuffer, and the source under it, stay reachable until the last
+ * lazy body of a script is parsed.
+ */
+final class LazyBody extends AbstractList<Stmt> {
+    private final TokenBuffer tokens;
+    private final int start;
+    /** The function this is the body of, set by the Parser once it is made. */
+    Stmt.Function declaration;
+    private List<Stmt> stmts;
+    private boolean failed = false;
+
+    /**
+     * @param start index of the first token after the body's '{'
+     */
+    LazyBody(TokenBuffer tokens, int start) {
+        this.tokens = tokens;
+        this.start = start;
+    }
+
+    /**
+     * @return the statements of the body, parsed on the first call
+     * @throws RuntimeError if the body has compile errors
+     */
+    List<Stmt> stmts() {
+        if (stmts == null && !failed) parse();
+        if (failed) throw new RuntimeError(declaration.name, "Syntax error in body of " + declaration.name.lexeme + ".");
+        return stmts;
+    }
+
+    private void parse() {
+        ErrorReporter errors = new ErrorReporter() {
+            @Override
+            public void report(int line, String where, String message) {
+                failed = true;
+                Lox.CONSOLE.report(line, where, message);
+            }
+
+            @Override
+            public boolean hadError() {
+                return failed;
+            }
+        };
+
+        List<Stmt> parsed = new Parser(tokens, errors).functionBody(start);
+        if (failed) return;
+        // The Resolver reads the body back through this list: first as parsed,
+        // to check what the Optimizer drops, as Lox.compile does, then optimized.
+        stmts = parsed;
+        new Resolver(errors).resolveFunction(declaration);
+        if (!failed) {
+            stmts = new Optimizer().optimize(parsed);
+            new Resolver(errors).resolveFunction(declaration);
+        }
+        if (failed) stmts = null;
+    }
+
+    @Override
+    public Stmt get(int index) {
+        return stmts().get(index);
+    }
+
+    @Override
+    public int size() {
+        return stmts().size();
+    }
+
+    @Override
+    public Iterator<Stmt> iterator() {
+        return stmts().iterator();
+    }
+}
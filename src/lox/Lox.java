@@ -3,9 +3,16 @@ package lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,27 +20,145 @@ import java.util.List;
  * This is my implementation of it.
  */
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
+    private static Engine engine = new Interpreter();
     static boolean hadError = false;
+    /** Prints compile errors to stderr as they are found and sets hadError. */
+    static final ErrorReporter CONSOLE = new ErrorReporter() {
+        @Override
+        public void report(int line, String where, String message) {
+            Lox.report(line, where, message);
+        }
+
+        @Override
+        public boolean hadError() {
+            return hadError;
+        }
+    };
     static boolean hadRuntimeError = false;
+    private static boolean printStats = false;
+    private static boolean dumpAst = false;
+    private static boolean cache = false;
+    private static boolean lazy = false;
+    private static Path cacheDirectory = null;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        List<String> files = new ArrayList<>();
+        boolean jit = false;
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = createEngine(arg.substring("--engine=".length()));
+            } else if (arg.equals("--stats")) {
+                printStats = true;
+            } else if (arg.equals("--dump-ast")) {
+                dumpAst = true;
+            } else if (arg.equals("--jit")) {
+                jit = true;
+            } else if (arg.equals("--lazy")) {
+                lazy = true;
+            } else if (arg.equals("--cache")) {
+                cache = true;
+            } else if (arg.startsWith("--cache=")) {
+                cache = true;
+                cacheDirectory = Path.of(arg.substring("--cache=".length()));
+            } else {
+                files.add(arg);
+            }
+        }
+
+        if (jit && engine instanceof Interpreter interpreter) {
+            interpreter.jit = true;
+        } else if (jit) {
+            engine = null;
+        }
+        // Only the Interpreter waits for a call to parse a body; the other engines translate every body up front.
+        if (lazy && engine != null && !(engine instanceof Interpreter)) {
+            System.err.println("--lazy only works with --engine=tree.");
+            System.exit(64);
+        }
+
+        if (engine == null) {
+            System.out.println("Usage: jlox [--engine=tree|vm|closure|flat|records] [--jit] [--lazy] [--stats] [--dump-ast] [--cache[=dir]] [script...]");
             System.exit(64);//UNIX sysexists code (EX_USAGE)
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        } else if (files.size() > 1) {
+            runFiles(files);
+        } else if (files.size() == 1) {
+            runFile(files.get(0));
         } else {
             runPrompt();
         }
     }
 
+    /**
+     * @param name engine name given with --engine
+     * @return the engine, or null if there is no engine by that name
+     */
+    private static Engine createEngine(String name) {
+        return switch (name) {
+            case "tree" -> new Interpreter();
+            case "vm" -> new VM();
+            case "closure" -> new ClosureCompiler();
+            case "flat" -> new FlatInterpreter();
+            case "records" -> new RecordInterpreter();
+            default -> null;
+        };
+    }
+
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        List<Stmt> stmts = load(Path.of(path), CONSOLE);
+        if (stmts != null) execute(stmts);
+        if (printStats) printStats();
         if (hadError) System.exit(65); //EX_DATAERR
     }
 
+    /**
+     * Compiles all the scripts in parallel, then runs them one by one in the
+     * order given, sharing globals. Nothing runs if any of them has errors,
+     * and a runtime error stops the scripts after it. A syntax error in a
+     * --lazy body is found while running, and also ends with EX_DATAERR.
+     */
+    private static void runFiles(List<String> paths) throws IOException {
+        List<Path> files = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            files.add(Path.of(path));
+        }
+
+        List<BatchLoader.Unit> units = new BatchLoader().load(files);
+        for (BatchLoader.Unit unit : units) {
+            for (String message : unit.errors()) {
+                System.err.println(unit.path() + ": " + message);
+            }
+            if (unit.stmts() == null) hadError = true;
+        }
+        if (hadError) System.exit(65); //EX_DATAERR
+
+        for (BatchLoader.Unit unit : units) {
+            execute(unit.stmts());
+            if (hadRuntimeError) break;
+        }
+        if (printStats) printStats();
+        if (hadError) System.exit(65); //EX_DATAERR
+    }
+
+    /**
+     * Reads and compiles a script, through the ScriptCache if --cache was given.
+     * Safe to call from several threads at once, as long as each has its own reporter.
+     * @return the statements ready to run, or null if there were errors
+     */
+    static List<Stmt> load(Path path, ErrorReporter errors) throws IOException {
+        ScriptCache scriptCache = cache ? new ScriptCache(path, cacheDirectory) : null;
+        if (scriptCache != null) {
+            List<Stmt> stmts = scriptCache.load();
+            if (stmts != null) return stmts;
+        }
+
+        // The cache compiles the very bytes it hashed, in case the file changes in between.
+        CharBuffer source = scriptCache != null ? decode(scriptCache.source()) : readSource(path);
+        List<Stmt> stmts = compile(source.array(), source.limit(), errors);
+        // Storing would parse every lazy body, which --lazy is there to avoid.
+        if (stmts != null && scriptCache != null && !lazy) scriptCache.store(stmts);
+        return stmts;
+    }
+
     private static void runPrompt() throws IOException {
         InputStreamReader isr = new InputStreamReader(System.in);
         BufferedReader br = new BufferedReader(isr);
@@ -47,21 +172,105 @@ public class Lox {
         }
     }
 
+    /**
+     * Maps a script file and decodes it as UTF-8 straight into the char[] the
+     * Scanner works on, so the only copy of the source on the heap is that one.
+     * Malformed bytes become U+FFFD, as they would with new String.
+     * @param path script file
+     * @return the decoded source, in the buffer's backing array up to its limit
+     */
+    static CharBuffer readSource(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Script too large: " + path);
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Decodes UTF-8 as readSource does.
+     * @param bytes the source, from its position to its limit
+     */
+    static CharBuffer decode(ByteBuffer bytes) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // UTF-8 never decodes to more chars than it has bytes.
+        CharBuffer chars = CharBuffer.allocate(bytes.remaining());
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (result.isError()) result.throwException();
+        decoder.flush(chars);
+        return chars.flip();
+    }
+
     /**
      * Runs on string loaded in buffer.
      * Scans for tokens, and is the base of interpreter. Not yet implemented.
      * @param source String or piece of code to be interpreted.
      */
     private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+        char[] chars = source.toCharArray();
+        List<Stmt> stmts = compile(chars, chars.length, CONSOLE);
+        if (stmts != null) execute(stmts);
+    }
+
+    /**
+     * Scans, parses, optimizes and resolves the source.
+     * @param length number of chars of source to compile, from the start
+     * @param errors where to report compile errors
+     * @return the statements ready to run, or null if there were errors
+     */
+    static List<Stmt> compile(char[] source, int length, ErrorReporter errors) {
+        return compile(source, length, errors, lazy);
+    }
+
+    /**
+     * @param lazy whether bodies of top-level functions are left to LazyBody
+     */
+    static List<Stmt> compile(char[] source, int length, ErrorReporter errors, boolean lazy) {
+        TokenBuffer tokens = new Scanner(source, length, errors).scan();
 
-        Parser parser = new Parser(tokens);
+        Parser parser = new Parser(tokens, errors);
+        parser.lazy = lazy;
         List<Stmt> stmts = parser.parse();
 
-        if(hadError) return;
+        if(errors.hadError()) return null;
+
+        // Resolved once as written, so that branches the Optimizer drops are
+        // still checked, then again for the slots of the tree that runs.
+        new Resolver(errors).resolve(stmts);
+        if(errors.hadError()) return null;
+
+        stmts = new Optimizer().optimize(stmts);
+
+        Resolver resolver = new Resolver(errors);
+        resolver.resolve(stmts);
 
-        interpreter.interpret(stmts);
+        if(errors.hadError()) return null;
+        return stmts;
+    }
+
+    /**
+     * Runs the statements on the engine, or prints them for --dump-ast.
+     */
+    private static void execute(List<Stmt> stmts) {
+        if (dumpAst) {
+            System.out.print(new AstPrinter().print(stmts));
+            return;
+        }
+        engine.interpret(stmts);
+    }
+
+    /**
+     * Prints whatever runtime statistics the engine keeps to stderr.
+     */
+    private static void printStats() {
+        if (engine instanceof ClosureCompiler closureCompiler) {
+            System.err.println(closureCompiler.specializationReport());
+        } else if (engine instanceof Interpreter interpreter && interpreter.jit) {
+            System.err.println("jit: " + interpreter.jitCompiled + " compiled, "
+                    + interpreter.jitDeopts + " deoptimized");
+        }
     }
 
     /**
@@ -72,23 +281,25 @@ public class Lox {
      * @param message Message to print.
      */
     static void error(int line, String message) {
-        report(line, "", message);
+        CONSOLE.error(line, message);
     }
 
     static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, "", message);
-        } else {
-            report(token.line, " at " + token.lexeme + "'", message);
-        }
+        CONSOLE.error(token, message);
     }
 
     static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + System.lineSeparator() + "line "
-        + error.token.line + "]");
+        System.err.println(describe(error));
         hadRuntimeError = true;
     }
 
+    /**
+     * @return the error as runtimeError prints it
+     */
+    static String describe(RuntimeError error) {
+        return error.getMessage() + System.lineSeparator() + "line " + error.line + "]";
+    }
+
     /**
      * Prints and formats an error message to stderr.
      * @param line Line where error happened.
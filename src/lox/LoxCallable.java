@@ -1,8 +1,31 @@
 package lox;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Something Lox can call.
+ * call0 to call3 are entry points for calls with that many arguments, which
+ * the Interpreter uses so that it doesn't have to collect the arguments into a
+ * list. Callables that can take the arguments directly override them.
+ */
 public interface LoxCallable {
     int arity();
     Object call(Interpreter interpreter, List<Object> args);
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, List.of());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Arrays.asList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
 }
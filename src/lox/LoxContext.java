@@ -0,0 +1,82 @@
+package lox;
+
+import java.io.PrintStream;
+
+/**
+ * Globals that Programs run against, made by LoxEngine.newContext.
+ * Running several Programs in one context is like running several scripts
+ * in one go: later ones see the globals defined by earlier ones.
+ * A context is not thread-safe, but contexts share nothing with each other
+ * except Programs, which they only read, so each thread can have its own.
+ */
+public final class LoxContext {
+    private final Interpreter interpreter;
+    private final PrintStream err;
+
+    LoxContext(PrintStream out, PrintStream err) {
+        this(new Interpreter(out), err);
+    }
+
+    /**
+     * @param globals global environment of this context alone, with the natives defined
+     * or forked from a snapshot that has them
+     */
+    LoxContext(PrintStream out, PrintStream err, Environment globals) {
+        this(new Interpreter(out, globals), err);
+    }
+
+    private LoxContext(Interpreter interpreter, PrintStream err) {
+        this.interpreter = interpreter;
+        this.err = err;
+        // Programs are shared with other contexts, which must not see this one's cells.
+        interpreter.cacheGlobals = false;
+    }
+
+    /**
+     * @return true if the program ran to the end, false if a runtime error,
+     * reported to this context's error stream, stopped it
+     */
+    public boolean run(LoxEngine.Program program) {
+        try {
+            execute(program);
+            return true;
+        } catch (RuntimeError error) {
+            err.println(Lox.describe(error));
+            return false;
+        }
+    }
+
+    /**
+     * Like run, but a runtime error is thrown instead of reported.
+     */
+    void execute(LoxEngine.Program program) {
+        interpreter.run(program.stmts);
+    }
+
+    /**
+     * @return value of the global, or null if it isn't defined
+     */
+    public Object get(String name) {
+        Global global = interpreter.globals.cell(SymbolTable.id(name));
+        if (!global.defined) return null;
+        return global.value instanceof Rope rope ? rope.toString() : global.value;
+    }
+
+    /**
+     * Freezes the globals as they are now, to start other contexts from with
+     * LoxEngine.newContext without running the programs that defined them.
+     * This context can go on changing its globals; the snapshot won't see it.
+     */
+    public GlobalSnapshot snapshot() {
+        return interpreter.globals.snapshot();
+    }
+
+    /**
+     * Defines a global for programs run after this, such as a value for them to work on.
+     * Any other Number is turned into the Double that Lox numbers are.
+     */
+    public void define(String name, Object value) {
+        if (value instanceof Number number && !(value instanceof Double)) value = number.doubleValue();
+        interpreter.globals.define(name, value);
+    }
+}
@@ -0,0 +1,86 @@
+package lox;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Entry point for running Lox inside another Java program.
+ * An engine compiles sources into Programs, and makes LoxContexts to run them.
+ * A Program is never changed once compiled, so one Program can be run by any
+ * number of contexts, on any number of threads at once. Each context has its
+ * own globals, output and error stream, and belongs to one thread at a time.
+ * <pre>
+ * LoxEngine engine = new LoxEngine();
+ * LoxEngine.Program program = engine.compile("var answer = 6 * 7;");
+ * LoxContext context = engine.newContext(System.out, System.err);
+ * context.run(program);
+ * context.get("answer");  // 42.0
+ * </pre>
+ * A context that has run a prelude, such as a library of functions, can be
+ * frozen with LoxContext.snapshot, and new contexts started from the snapshot
+ * in constant time instead of running the prelude again in each of them.
+ * Nothing here touches the static state of the Lox command line.
+ */
+public final class LoxEngine {
+    /**
+     * Statements compiled from one source, ready to run.
+     */
+    public static final class Program {
+        final List<Stmt> stmts;
+
+        private Program(List<Stmt> stmts) {
+            this.stmts = Collections.unmodifiableList(stmts);
+        }
+    }
+
+    /**
+     * Thrown by compile for a source with errors.
+     */
+    public static final class CompileError extends RuntimeException {
+        private final List<String> errors;
+
+        CompileError(List<String> errors) {
+            super(String.join(System.lineSeparator(), errors));
+            this.errors = List.copyOf(errors);
+        }
+
+        /**
+         * @return every error in the source, formatted as the command line prints them
+         */
+        public List<String> errors() {
+            return errors;
+        }
+    }
+
+    /**
+     * Safe to call from several threads at once.
+     * @throws CompileError if the source has errors
+     */
+    public Program compile(String source) {
+        ErrorLog errors = new ErrorLog();
+        char[] chars = source.toCharArray();
+        // A LazyBody would change the tree while it runs, so every body is parsed now.
+        List<Stmt> stmts = Lox.compile(chars, chars.length, errors, false);
+        if (stmts == null) throw new CompileError(errors.messages());
+        return new Program(stmts);
+    }
+
+    /**
+     * @param out where print writes
+     * @param err where runtime errors are reported
+     * @return a context with nothing but the natives defined
+     */
+    public LoxContext newContext(PrintStream out, PrintStream err) {
+        return new LoxContext(out, err);
+    }
+
+    /**
+     * @param snapshot globals the context starts with, which it can change
+     * without the snapshot or other contexts seeing it
+     * @see #newContext(PrintStream, PrintStream)
+     */
+    public LoxContext newContext(GlobalSnapshot snapshot, PrintStream out, PrintStream err) {
+        return new LoxContext(out, err, snapshot.fork());
+    }
+}
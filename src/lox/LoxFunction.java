@@ -1,13 +1,43 @@
 package lox;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * A function declared in Lox, run by the Interpreter.
+ * A function that declares no functions itself can't have its frame captured,
+ * so its frames are pooled and reused once a call returns. Calls through the
+ * fixed-arity entry points then allocate nothing.
+ */
 public class LoxFunction implements LoxCallable{
+    private static final int POOL_SIZE = 64;
 
     private final Stmt.Function declaration;
+    private final Environment closure;
+    private Environment[] pool;
+    private int pooled = 0;
+    private boolean prepared = false;
 
-    protected LoxFunction(Stmt.Function declaration) {
+    private int calls = 0;
+    private boolean[] numberArgs;
+    private JitCode compiled;
+    private int deopts = 0;
+
+    protected LoxFunction(Stmt.Function declaration, Environment closure) {
         this.declaration = declaration;
+        this.closure = closure;
+    }
+
+    /**
+     * @return the same function, closing over copies of the frames it captured,
+     * with a pool and profile of its own
+     */
+    LoxFunction copy(GlobalSnapshot.Copier copier) {
+        Environment frame = copier.frame(closure);
+        // Copying the frames may have come back around to this function.
+        LoxFunction copy = (LoxFunction) copier.copyOf(this);
+        if (copy != null) return copy;
+        return copier.copied(this, new LoxFunction(declaration, frame));
     }
 
     @Override
@@ -17,14 +47,147 @@ public class LoxFunction implements LoxCallable{
 
     @Override
     public Object call(Interpreter interpreter, List<Object> args) {
-        Environment env = new Environment(interpreter.globals);
+        if (compiled != null) {
+            Object result = invokeCompiled(interpreter, args.toArray());
+            if (result != JitRuntime.DEOPT) return result;
+        }
+
+        Environment frame = frame();
+        for (int i = 0; i < args.size(); i++) {
+            frame.define(i, args.get(i));
+        }
+        return execute(interpreter, frame);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        if (compiled != null) {
+            Object result = invokeCompiled(interpreter, new Object[0]);
+            if (result != JitRuntime.DEOPT) return result;
+        }
+        return execute(interpreter, frame());
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        if (compiled != null) {
+            Object result = invokeCompiled(interpreter, new Object[] {a});
+            if (result != JitRuntime.DEOPT) return result;
+        }
+
+        Environment frame = frame();
+        frame.define(0, a);
+        return execute(interpreter, frame);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        if (compiled != null) {
+            Object result = invokeCompiled(interpreter, new Object[] {a, b});
+            if (result != JitRuntime.DEOPT) return result;
+        }
+
+        Environment frame = frame();
+        frame.define(0, a);
+        frame.define(1, b);
+        return execute(interpreter, frame);
+    }
 
-        for (int i = 0; i < declaration.params.size(); i++) {
-            env.define(declaration.params.get(i).lexeme, args.get(i));
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        if (compiled != null) {
+            Object result = invokeCompiled(interpreter, new Object[] {a, b, c});
+            if (result != JitRuntime.DEOPT) return result;
         }
 
-        interpreter.executeBlock(declaration.body, env);
-        return null;
+        Environment frame = frame();
+        frame.define(0, a);
+        frame.define(1, b);
+        frame.define(2, c);
+        return execute(interpreter, frame);
+    }
+
+    /**
+     * @return a frame for a call, or the closure itself if the function needs none
+     */
+    private Environment frame() {
+        if (!prepared) prepare();
+        if (declaration.locals == 0) return closure;
+        if (pooled > 0) return pool[--pooled];
+        return new Environment(closure, declaration.locals);
+    }
+
+    /**
+     * Runs before the first call. A LazyBody is parsed here, which is what
+     * works out how many locals the frames need and whether they can be pooled.
+     */
+    private void prepare() {
+        if (declaration.body instanceof LazyBody body) body.stmts();
+        boolean poolFrames = declaration.locals > 0 && !declaration.declaresFunctions;
+        pool = poolFrames ? new Environment[POOL_SIZE] : null;
+        prepared = true;
+    }
+
+    /**
+     * Runs the body in a frame holding the arguments, then gives the frame
+     * back to the pool if it came from there or can go there.
+     */
+    private Object execute(Interpreter interpreter, Environment frame) {
+        if (interpreter.jit && deopts < Jit.MAX_DEOPTS) profile(interpreter, frame);
+
+        try {
+            return result(interpreter, interpreter.executeBlock(declaration.body, frame));
+        } finally {
+            if (pool != null && pooled < POOL_SIZE) {
+                frame.clear();
+                pool[pooled++] = frame;
+            }
+        }
+    }
+
+    private Object invokeCompiled(Interpreter interpreter, Object[] args) {
+        Object result = compiled.invoke(interpreter, closure, args);
+        if (result == JitRuntime.DEOPT) deoptimize(interpreter);
+        return result;
+    }
+
+    private static Object result(Interpreter interpreter, Completion completion) {
+        return completion == Completion.RETURN ? interpreter.takeReturnValue() : null;
+    }
+
+    /**
+     * Records which parameters have only ever been numbers, and compiles the
+     * function once it has been called Jit.THRESHOLD times.
+     */
+    private void profile(Interpreter interpreter, Environment frame) {
+        int arity = declaration.params.size();
+        if (numberArgs == null) {
+            numberArgs = new boolean[arity];
+            Arrays.fill(numberArgs, true);
+        }
+        for (int i = 0; i < arity; i++) {
+            numberArgs[i] &= frame.getAt(0, i) instanceof Double;
+        }
+
+        if (++calls < Jit.THRESHOLD) return;
+        compiled = Jit.compile(declaration, numberArgs, interpreter.globals);
+        if (compiled == null) {
+            deopts = Jit.MAX_DEOPTS;
+        } else {
+            interpreter.jitCompiled++;
+        }
+    }
+
+    /**
+     * Throws the compiled code away after its guards failed. The profile has
+     * to reach the threshold again before it is recompiled, now without the
+     * failed assumption; after Jit.MAX_DEOPTS the function stays interpreted.
+     */
+    private void deoptimize(Interpreter interpreter) {
+        compiled = null;
+        calls = 0;
+        deopts++;
+        interpreter.jitDeopts++;
     }
 
     @Override
@@ -0,0 +1,130 @@
+package lox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A Lox list, made by the list() native and used through get, set, push and len.
+ * While every element is a number the elements are kept unboxed in a
+ * double[]; the first element that isn't moves them all into an Object[],
+ * where they stay. Numbers read from the double[] are boxed again, so what
+ * this saves is the memory of the Doubles and the pointers to them, and the
+ * GC work for both.
+ */
+final class LoxList {
+    private double[] numbers = new double[8];
+    /** Null while numbers holds the elements. */
+    private Object[] values;
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    Object get(Object index) {
+        int i = index(index);
+        return numbers != null ? (Object) numbers[i] : values[i];
+    }
+
+    void set(Object index, Object value) {
+        int i = index(index);
+        if (numbers != null && value instanceof Double number) {
+            numbers[i] = number;
+            return;
+        }
+        if (numbers != null) promote();
+        values[i] = value;
+    }
+
+    void push(Object value) {
+        if (numbers != null && value instanceof Double number) {
+            if (size == numbers.length) numbers = Arrays.copyOf(numbers, size * 2);
+            numbers[size++] = number;
+            return;
+        }
+        if (numbers != null) promote();
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    /**
+     * Moves the elements from numbers to values, for good.
+     */
+    private void promote() {
+        values = new Object[numbers.length];
+        for (int i = 0; i < size; i++) {
+            values[i] = numbers[i];
+        }
+        numbers = null;
+    }
+
+    /**
+     * @return the index as an int, if it is a whole number within the list
+     */
+    private int index(Object index) {
+        if (!(index instanceof Double number)) throw new NativeError("List index must be a number.");
+        double value = number;
+        if (value != Math.floor(value) || value < 0 || value >= size) {
+            throw new NativeError("List index out of range: " + Interpreter.stringify(index) + ".");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @return a list with copies of the elements, made by the copier
+     */
+    LoxList copy(GlobalSnapshot.Copier copier) {
+        LoxList copy = copier.copied(this, new LoxList());
+        copy.size = size;
+        if (numbers != null) {
+            copy.numbers = numbers.clone();
+            return copy;
+        }
+        copy.numbers = null;
+        copy.values = new Object[values.length];
+        for (int i = 0; i < size; i++) {
+            copy.values[i] = copier.copy(values[i]);
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder();
+        append(string, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return string.toString();
+    }
+
+    /**
+     * @param printing lists and maps whose printing this is part of
+     */
+    void append(StringBuilder string, Set<Object> printing) {
+        if (!printing.add(this)) {
+            string.append("[...]");
+            return;
+        }
+        string.append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) string.append(", ");
+            append(string, numbers != null ? (Object) numbers[i] : values[i], printing);
+        }
+        string.append(']');
+        printing.remove(this);
+    }
+
+    /**
+     * Appends a value as print shows it. A list or map that is already being
+     * printed further out, as one that holds itself is, shows as [...] or {...}.
+     */
+    static void append(StringBuilder string, Object value, Set<Object> printing) {
+        if (value instanceof LoxList list) {
+            list.append(string, printing);
+        } else if (value instanceof LoxMap map) {
+            map.append(string, printing);
+        } else {
+            string.append(Interpreter.stringify(value));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package lox;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A Lox map, made by the map() native and used through get, set and len.
+ * Keys are strings, numbers or booleans, equal when isEqual says so; a Rope
+ * key is flattened first, so it finds the same entry as the String it spells.
+ * <br>
+ * The table is open-addressed with linear probing, laid out like Interner's:
+ * keys, values and hashes in parallel arrays, with Fibonacci hashing to pick
+ * the first slot. The hash of each key is kept next to it, so probing
+ * compares ints and only calls equals on a hash match; a String caches its
+ * own hash as well, so looking up the same key again doesn't rehash it.
+ * Entries are never removed, so there are no tombstones.
+ */
+final class LoxMap {
+    private Object[] keys = new Object[16];
+    private Object[] values = new Object[16];
+    private int[] hashes = new int[16];
+    private int shift = 32 - 4;
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value for the key, or nil if it has none
+     */
+    Object get(Object key) {
+        key = key(key);
+        int i = find(key, key.hashCode());
+        return keys[i] == null ? null : values[i];
+    }
+
+    void set(Object key, Object value) {
+        key = key(key);
+        int hash = key.hashCode();
+        int i = find(key, hash);
+        if (keys[i] == null) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                i = find(key, hash);
+            }
+            keys[i] = key;
+            hashes[i] = hash;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    private static Object key(Object key) {
+        if (key instanceof Rope rope) return rope.toString();
+        if (key instanceof String || key instanceof Double || key instanceof Boolean) return key;
+        throw new NativeError("Map keys must be strings, numbers or booleans.");
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would go
+     */
+    private int find(Object key, int hash) {
+        int mask = keys.length - 1;
+        for (int i = slot(hash); ; i = (i + 1) & mask) {
+            Object entry = keys[i];
+            if (entry == null || (hashes[i] == hash && entry.equals(key))) return i;
+        }
+    }
+
+    private int slot(int hash) {
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    private void grow() {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new Object[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        shift--;
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) continue;
+            int i = slot(oldHashes[j]);
+            while (keys[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+
+    /**
+     * @return a map with the same keys and copies of the values, made by the copier
+     */
+    LoxMap copy(GlobalSnapshot.Copier copier) {
+        LoxMap copy = copier.copied(this, new LoxMap());
+        copy.keys = keys.clone();
+        copy.hashes = hashes.clone();
+        copy.values = new Object[values.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) copy.values[i] = copier.copy(values[i]);
+        }
+        copy.shift = shift;
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder();
+        append(string, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return string.toString();
+    }
+
+    /**
+     * @param printing lists and maps whose printing this is part of
+     * @see LoxList#append(StringBuilder, Object, Set)
+     */
+    void append(StringBuilder string, Set<Object> printing) {
+        if (!printing.add(this)) {
+            string.append("{...}");
+            return;
+        }
+        string.append('{');
+        boolean first = true;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) continue;
+            if (!first) string.append(", ");
+            first = false;
+            string.append(Interpreter.stringify(keys[i])).append(": ");
+            LoxList.append(string, values[i], printing);
+        }
+        string.append('}');
+        printing.remove(this);
+    }
+}
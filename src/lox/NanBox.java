@@ -0,0 +1,84 @@
+package lox;
+
+/**
+ * Unboxed value representation used by the VM.
+ * A value is a long holding the bits of a double. Everything that is not a
+ * number lives inside the quiet-NaN space, which arithmetic never produces:
+ * nil, false and true are fixed bit patterns, and heap values (strings,
+ * functions) are all the single pattern REF. The object itself then sits in
+ * a parallel Object[] (the side table) at the same index as the long.
+ * Entries of the side table only mean something where the long is REF.
+ */
+final class NanBox {
+    private static final long QNAN = 0x7ffc000000000000L;
+    private static final long SIGN_BIT = 0x8000000000000000L;
+
+    static final long NIL = QNAN | 1;
+    static final long FALSE = QNAN | 2;
+    static final long TRUE = QNAN | 3;
+    static final long REF = SIGN_BIT | QNAN;
+
+    private NanBox() {}
+
+    /**
+     * NaNs are canonicalized so that no computed NaN can look like a tag.
+     */
+    static long number(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
+    static double asNumber(long value) {
+        return Double.longBitsToDouble(value);
+    }
+
+    static boolean isNumber(long value) {
+        return (value & QNAN) != QNAN;
+    }
+
+    static long bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    static boolean isFalsey(long value) {
+        return value == NIL || value == FALSE;
+    }
+
+    /**
+     * Numbers are canonical, so equal numbers have equal bits. That matches
+     * Double.equals, which isEqual uses for boxed numbers.
+     */
+    static boolean isEqual(long a, Object aRef, long b, Object bRef) {
+        if (a == REF && b == REF) return Interpreter.isEqual(aRef, bRef);
+        return a == b;
+    }
+
+    /**
+     * @return bits for a boxed value; if they are REF, the object itself goes
+     * in the side table
+     */
+    static long unbox(Object value) {
+        if (value == null) return NIL;
+        if (value instanceof Double d) return number(d);
+        if (value instanceof Boolean b) return bool(b);
+        return REF;
+    }
+
+    static Object box(long value, Object ref) {
+        if (isNumber(value)) return asNumber(value);
+        if (value == NIL) return null;
+        if (value == TRUE) return true;
+        if (value == FALSE) return false;
+        return ref;
+    }
+
+    static String stringify(long value, Object ref) {
+        if (value == REF) return Interpreter.stringify(ref);
+        if (value == NIL) return "nil";
+        if (value == TRUE) return "true";
+        if (value == FALSE) return "false";
+
+        String s = Double.toString(asNumber(value));
+        if (s.endsWith(".0")) s = s.substring(0, s.length()-2);
+        return s;
+    }
+}
@@ -0,0 +1,36 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * A function built into Lox, defined by Interpreter.defineNatives.
+ * A native overrides the entry point for its own arity; call forwards to it,
+ * for engines that always pass a list. Natives take at most three arguments.
+ */
+abstract class Native implements LoxCallable {
+    private final int arity;
+
+    Native(int arity) {
+        this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> args) {
+        return switch (args.size()) {
+            case 0 -> call0(interpreter);
+            case 1 -> call1(interpreter, args.get(0));
+            case 2 -> call2(interpreter, args.get(0), args.get(1));
+            default -> call3(interpreter, args.get(0), args.get(1), args.get(2));
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,12 @@
+package lox;
+
+/**
+ * Thrown by a Native for a bad argument. A native has no token to put in a
+ * RuntimeError, so the engine that made the call catches this and throws a
+ * RuntimeError with the same message at the line of the call.
+ */
+final class NativeError extends RuntimeException {
+    NativeError(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,42 @@
+package lox;
+
+/**
+ * Instruction set of the VM.
+ * Operands follow the opcode in the code array; u8 is one byte, u16 is two
+ * bytes, high byte first.
+ */
+final class OpCode {
+    static final byte CONSTANT = 0;       // u16 constant index
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+    static final byte GET_LOCAL = 5;      // u8 depth, u16 slot
+    static final byte SET_LOCAL = 6;      // u8 depth, u16 slot
+    static final byte DEFINE_LOCAL = 7;   // u16 slot
+    static final byte GET_GLOBAL = 8;     // u16 Global cell constant
+    static final byte SET_GLOBAL = 9;     // u16 Global cell constant
+    static final byte DEFINE_GLOBAL = 10; // u16 Global cell constant
+    static final byte EQUAL = 11;
+    static final byte GREATER = 12;
+    static final byte GREATER_EQUAL = 13;
+    static final byte LESS = 14;
+    static final byte LESS_EQUAL = 15;
+    static final byte ADD = 16;
+    static final byte SUBTRACT = 17;
+    static final byte MULTIPLY = 18;
+    static final byte DIVIDE = 19;
+    static final byte NOT = 20;
+    static final byte NEGATE = 21;
+    static final byte PRINT = 22;
+    static final byte JUMP = 23;          // u16 forward offset
+    static final byte JUMP_IF_FALSE = 24; // u16 forward offset, leaves condition
+    static final byte LOOP = 25;          // u16 backward offset
+    static final byte CALL = 26;          // u8 argument count
+    static final byte CLOSURE = 27;       // u16 function constant
+    static final byte RETURN = 28;
+    static final byte PUSH_SCOPE = 29;    // u16 frame size
+    static final byte POP_SCOPE = 30;
+
+    private OpCode() {}
+}
@@ -0,0 +1,320 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites the syntax tree between the Parser and the Resolver, so that every
+ * engine runs the simpler tree.
+ * <ul>
+ *     <li>Operators whose operands are all literals are folded into a literal,
+ *     unless they would fail at runtime; the error is left to happen there.</li>
+ *     <li>Logical operators with a literal left operand are reduced to the
+ *     operand they evaluate to.</li>
+ *     <li>Ifs with a literal condition are replaced by the branch taken, and
+ *     whiles whose condition is a falsy literal are removed.</li>
+ *     <li>Invariant parts of a loop condition are computed once, before the loop.</li>
+ * </ul>
+ */
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private int invariants = 0;
+
+    List<Stmt> optimize(List<Stmt> stmts) {
+        List<Stmt> optimized = new ArrayList<>(stmts.size());
+        for (Stmt stmt : stmts) {
+            Stmt result = optimize(stmt);
+            if (result != null) optimized.add(result);
+        }
+        return optimized;
+    }
+
+    /**
+     * @return the optimized statement, or null if it does nothing
+     */
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    /**
+     * For statements that are the body of another, where one is required.
+     */
+    private Stmt optimizeBody(Stmt stmt) {
+        Stmt result = optimize(stmt);
+        return result == null ? new Stmt.Block(new ArrayList<>()) : result;
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        return new Expr.Assign(expr.name, optimize(expr.value));
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal a && right instanceof Expr.Literal b) {
+            Expr folded = fold(expr.op, a.value, b.value);
+            if (folded != null) return folded;
+        }
+        return new Expr.Binary(left, expr.op, right);
+    }
+
+    /**
+     * @return the literal the operator evaluates to, or null if it would be a
+     * runtime error
+     */
+    private static Expr fold(Token op, Object left, Object right) {
+        switch (op.type) {
+            case EQUAL_EQUAL -> {
+                return new Expr.Literal(Interpreter.isEqual(left, right));
+            }
+            case BANG_EQUAL -> {
+                return new Expr.Literal(!Interpreter.isEqual(left, right));
+            }
+            case PLUS -> {
+                if (left instanceof String a && right instanceof String b) return new Expr.Literal(a + b);
+            }
+        }
+
+        if (!(left instanceof Double a) || !(right instanceof Double b)) return null;
+        return switch (op.type) {
+            case PLUS -> new Expr.Literal(a + b);
+            case MINUS -> new Expr.Literal(a - b);
+            case STAR -> new Expr.Literal(a * b);
+            case SLASH -> new Expr.Literal(a / b);
+            case LESS -> new Expr.Literal(a < b);
+            case LESS_EQUAL -> new Expr.Literal(a <= b);
+            case GREATER -> new Expr.Literal(a > b);
+            case GREATER_EQUAL -> new Expr.Literal(a >= b);
+            default -> null;
+        };
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> args = new ArrayList<>(expr.args.size());
+        for (Expr arg : expr.args) {
+            args.add(optimize(arg));
+        }
+        return new Expr.Call(optimize(expr.callee), expr.paren, args);
+    }
+
+    /**
+     * Groupings only matter to the Parser, so they are dropped.
+     */
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal literal) {
+            boolean truthy = Interpreter.isTruthLike(literal.value);
+            if (expr.op.type == TokenType.OR) return truthy ? left : right;
+            return truthy ? right : left;
+        }
+        return new Expr.Logical(left, expr.op, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        if (right instanceof Expr.Literal literal) {
+            if (expr.op.type == TokenType.BANG) {
+                return new Expr.Literal(!Interpreter.isTruthLike(literal.value));
+            }
+            if (literal.value instanceof Double d) return new Expr.Literal(-d);
+        }
+        return new Expr.Unary(expr.op, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return new Expr.Variable(expr.name);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(optimize(stmt.statements));
+    }
+
+    /**
+     * Expression statements without side effects are removed.
+     */
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression instanceof Expr.Literal) return null;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        // A LazyBody is optimized when it is parsed.
+        if (stmt.body instanceof LazyBody) return stmt;
+        return new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body));
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal) {
+            if (Interpreter.isTruthLike(literal.value)) return optimize(stmt.thenBranch);
+            return stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+        }
+
+        Stmt elseBranch = stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+        return new Stmt.If(condition, optimizeBody(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        return new Stmt.Return(stmt.keyword, stmt.value == null ? null : optimize(stmt.value));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        return new Stmt.Var(stmt.name, stmt.initializer == null ? null : optimize(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal && !Interpreter.isTruthLike(literal.value)) {
+            return null;
+        }
+        Stmt body = optimizeBody(stmt.body);
+
+        Hoist hoist = new Hoist(body, condition);
+        if (!hoist.safe) return new Stmt.While(condition, body);
+
+        List<Stmt> hoisted = new ArrayList<>();
+        condition = hoist.hoist(condition, hoisted);
+        if (hoisted.isEmpty()) return new Stmt.While(condition, body);
+
+        hoisted.add(new Stmt.While(condition, body));
+        return new Stmt.Block(hoisted);
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    /**
+     * Loop-invariant code motion, restricted to the loop condition.
+     * The condition is the first thing a loop evaluates, so computing part of
+     * it once beforehand doesn't reorder it with any side effect of the body.
+     * That part must not depend on anything the loop can change: the loop
+     * must contain no calls, and it must not assign the variables the part reads.
+     * The hoisted values are kept in variables whose names can't be written in
+     * Lox, in a block around the loop.
+     */
+    private class Hoist {
+        final Set<Integer> assigned = new HashSet<>();
+        boolean safe = true;
+
+        Hoist(Stmt body, Expr condition) {
+            scan(body);
+            scan(condition);
+        }
+
+        Expr hoist(Expr expr, List<Stmt> hoisted) {
+            if (expr instanceof Expr.Binary binary) {
+                if (isInvariant(binary)) return extract(binary, hoisted);
+                return new Expr.Binary(hoist(binary.left, hoisted), binary.op, hoist(binary.right, hoisted));
+            }
+            if (expr instanceof Expr.Unary unary) {
+                if (isInvariant(unary)) return extract(unary, hoisted);
+                return new Expr.Unary(unary.op, hoist(unary.right, hoisted));
+            }
+            if (expr instanceof Expr.Logical logical) {
+                // The right operand isn't always evaluated, so only the left one can move.
+                return new Expr.Logical(hoist(logical.left, hoisted), logical.op, logical.right);
+            }
+            return expr;
+        }
+
+        private Expr extract(Expr expr, List<Stmt> hoisted) {
+            Token name = new Token(TokenType.IDENTIFIER, "invariant " + invariants++, null,
+                    line(expr));
+            hoisted.add(new Stmt.Var(name, expr));
+            return new Expr.Variable(name);
+        }
+
+        private boolean isInvariant(Expr expr) {
+            if (expr instanceof Expr.Literal) return true;
+            if (expr instanceof Expr.Variable variable) return !assigned.contains(variable.name.symbol);
+            if (expr instanceof Expr.Binary binary) return isInvariant(binary.left) && isInvariant(binary.right);
+            if (expr instanceof Expr.Unary unary) return isInvariant(unary.right);
+            return false;
+        }
+
+        private int line(Expr expr) {
+            if (expr instanceof Expr.Binary binary) return binary.op.line;
+            if (expr instanceof Expr.Unary unary) return unary.op.line;
+            return 0;
+        }
+
+        private void scan(Stmt stmt) {
+            if (stmt instanceof Stmt.Block block) {
+                block.statements.forEach(this::scan);
+            } else if (stmt instanceof Stmt.Expression expression) {
+                scan(expression.expression);
+            } else if (stmt instanceof Stmt.Function function) {
+                function.body.forEach(this::scan);
+            } else if (stmt instanceof Stmt.If ifStmt) {
+                scan(ifStmt.condition);
+                scan(ifStmt.thenBranch);
+                if (ifStmt.elseBranch != null) scan(ifStmt.elseBranch);
+            } else if (stmt instanceof Stmt.Print print) {
+                scan(print.expression);
+            } else if (stmt instanceof Stmt.Return ret) {
+                if (ret.value != null) scan(ret.value);
+            } else if (stmt instanceof Stmt.Var var) {
+                if (var.initializer != null) scan(var.initializer);
+            } else if (stmt instanceof Stmt.While whileStmt) {
+                scan(whileStmt.condition);
+                scan(whileStmt.body);
+            }
+        }
+
+        private void scan(Expr expr) {
+            if (expr instanceof Expr.Assign assign) {
+                assigned.add(assign.name.symbol);
+                scan(assign.value);
+            } else if (expr instanceof Expr.Binary binary) {
+                scan(binary.left);
+                scan(binary.right);
+            } else if (expr instanceof Expr.Call) {
+                safe = false;
+            } else if (expr instanceof Expr.Grouping grouping) {
+                scan(grouping.expression);
+            } else if (expr instanceof Expr.Logical logical) {
+                scan(logical.left);
+                scan(logical.right);
+            } else if (expr instanceof Expr.Unary unary) {
+                scan(unary.right);
+            }
+        }
+    }
+}
@@ -6,12 +6,22 @@ import java.util.Arrays;
 import java.util.List;
 import static lox.TokenType.*;
 
+/**
+ * Recursive descent parser over the packed tokens of a TokenBuffer.
+ * Only the tokens that end up in the syntax tree are turned into Token objects.
+ */
 public class Parser {
-    private final List<Token> tokens;
+    private final TokenBuffer tokens;
+    private final ErrorReporter errors;
     private int current = 0;
+    private int blocks = 0;
 
-    public Parser(List<Token> tokens) {
+    /** Whether bodies of top-level functions are skipped, to be parsed by a LazyBody; set with --lazy. */
+    boolean lazy = false;
+
+    public Parser(TokenBuffer tokens, ErrorReporter errors) {
         this.tokens = tokens;
+        this.errors = errors;
     }
 
     private Expr expression() {
@@ -160,7 +170,8 @@ public class Parser {
             } while (match(COMMA));
         }
 
-        Token paren = consume(RIGHT_PAREN, "Expect ')' after args");
+        consume(RIGHT_PAREN, "Expect ')' after args");
+        Token paren = previous();
         return new Expr.Call(callee, paren, args);
     }
 
@@ -170,7 +181,7 @@ public class Parser {
         if (match(NIL)) return new Expr.Literal(null);
 
         if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
+            return new Expr.Literal(tokens.literal(current - 1));
         }
 
         if (match(IDENTIFIER)) {
@@ -188,14 +199,38 @@ public class Parser {
 
 
     protected List<Stmt> parse() {
+        return parse(null);
+    }
+
+    /**
+     * @param starts if not null, gets the index of the first token of each
+     * top-level declaration, added just before the declaration is parsed
+     * @return one statement per declaration, null for one that failed to parse
+     */
+    List<Stmt> parse(List<Integer> starts) {
         List<Stmt> stmts = new ArrayList<>();
         while (!isatEnd()) {
+            if (starts != null) starts.add(current);
             stmts.add(declaration());
         }
 
         return stmts;
     }
 
+    /**
+     * Parses the body of a function that was skipped by a lazy parse.
+     * @param start index of the first token after the body's '{'
+     * @return the statements of the body, or null if it failed to parse
+     */
+    List<Stmt> functionBody(int start) {
+        current = start;
+        try {
+            return block();
+        } catch (ParseError error) {
+            return null;
+        }
+    }
+
     private Stmt declaration() {
         try {
             if (match(FUN)) return function("function");
@@ -209,7 +244,8 @@ public class Parser {
     }
 
     private Stmt varDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect variable name.");
+        consume(IDENTIFIER, "Expect variable name.");
+        Token name = previous();
 
         Expr initalizer = null;
         if (match(EQUAL)) {
@@ -320,14 +356,37 @@ public class Parser {
     private List<Stmt> block() {
         List<Stmt> stmts = new ArrayList<>();
 
-        while (!check(RIGHT_BRACE) && !isatEnd()) {
-            stmts.add(declaration());
-        }
+        blocks++;
+        try {
+            while (!check(RIGHT_BRACE) && !isatEnd()) {
+                stmts.add(declaration());
+            }
 
-        consume(RIGHT_BRACE, "Expect '}' after block.");
+            consume(RIGHT_BRACE, "Expect '}' after block.");
+        } finally {
+            blocks--;
+        }
         return stmts;
     }
 
+    /**
+     * Skips the tokens of a function body, up to and including the '}' that
+     * balances the '{' before it.
+     */
+    private void skipBody() {
+        int depth = 1;
+        while (!isatEnd()) {
+            TokenType type = tokens.type(current);
+            advance();
+            if (type == LEFT_BRACE) {
+                depth++;
+            } else if (type == RIGHT_BRACE && --depth == 0) {
+                return;
+            }
+        }
+        throw error(peek(), "Expect '}' after block.");
+    }
+
     private Stmt expressionStatement() {
         Expr expr = expression();
         consume(SEMICOLON, "Expect ';' after expression.");
@@ -335,7 +394,8 @@ public class Parser {
     }
 
     private Stmt.Function function(String kind) {
-        Token name = consume(IDENTIFIER, "Expect" + kind +" name.");
+        consume(IDENTIFIER, "Expect" + kind +" name.");
+        Token name = previous();
 
         consume(LEFT_PAREN, "Expect '(' after " + kind + " name." );
         List<Token> params = new ArrayList<>();
@@ -344,11 +404,19 @@ public class Parser {
                 if (params.size() >= 255) {
                     error(peek(), "Can't have more than 255 parameters.");
                 }
-                params.add(consume(IDENTIFIER, "Expected parameter name."));
+                consume(IDENTIFIER, "Expected parameter name.");
+                params.add(previous());
             } while (match(COMMA));
         }
         consume(RIGHT_PAREN, "Expect ')' after parameters.");
         consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        if (lazy && blocks == 0) {
+            LazyBody body = new LazyBody(tokens, current);
+            skipBody();
+            Stmt.Function function = new Stmt.Function(name, params, body);
+            body.declaration = function;
+            return function;
+        }
         List<Stmt> body = block();
         return new Stmt.Function(name, params, body);
     }
@@ -366,35 +434,36 @@ public class Parser {
 
     private boolean check(TokenType type) {
         if (isatEnd()) return false;
-        return peek().type == type;
+        return tokens.type(current) == type;
     }
 
-    private Token advance() {
+    private void advance() {
         if(!isatEnd()) current++;
-
-        return previous();
     }
 
     private boolean isatEnd() {
-        return peek().type == EOF;
+        return tokens.type(current) == EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private Token previous() {
-        return tokens.get(current-1);
+        return tokens.token(current-1);
     }
 
-    private Token consume(TokenType type, String message) {
-        if(check(type)) return advance();
+    private void consume(TokenType type, String message) {
+        if(check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        errors.error(token, message);
 
         return new ParseError();
     }
@@ -405,9 +474,9 @@ public class Parser {
         advance();
 
         while (!isatEnd()) {
-            if (previous().type == SEMICOLON) return;
+            if (tokens.type(current - 1) == SEMICOLON) return;
 
-            switch (peek().type) {
+            switch (tokens.type(current)) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -427,7 +496,7 @@ public class Parser {
         if (expr instanceof Expr.Binary) {
             Expr.Binary binary = (Expr.Binary) expr;
             if (binary.left == null) {
-                Lox.error(binary.op, "Missing left operand.");
+                errors.error(binary.op, "Missing left operand.");
             }
         }
     }
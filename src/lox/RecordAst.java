@@ -0,0 +1,125 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated by tool.GenerateAst --records.
+ * Copies a resolved Expr/Stmt tree into ExprNode and StmtNode records.
+ */
+final class RecordAst implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    private RecordAst() {}
+
+    static List<StmtNode> convert(List<Stmt> stmts) {
+        return new RecordAst().stmts(stmts);
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        return new ExprNode.Assign(expr.name, expr(expr.value), expr.depth, expr.slot);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        return new ExprNode.Binary(expr(expr.left), expr.op, expr(expr.right));
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        return new ExprNode.Call(expr(expr.callee), expr.paren, exprs(expr.args));
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return new ExprNode.Grouping(expr(expr.expression));
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return new ExprNode.Literal(expr.value);
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        return new ExprNode.Logical(expr(expr.left), expr.op, expr(expr.right));
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        return new ExprNode.Unary(expr.op, expr(expr.right));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        return new ExprNode.Variable(expr.name, expr.depth, expr.slot);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        return new StmtNode.Block(stmts(stmt.statements), stmt.locals);
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new StmtNode.Expression(expr(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        return new StmtNode.Function(stmt.name, stmt.params, stmts(stmt.body), stmt.slot, stmt.locals, stmt.declaresFunctions);
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt) {
+        return new StmtNode.If(expr(stmt.condition), stmt(stmt.thenBranch), stmt(stmt.elseBranch));
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new StmtNode.Print(expr(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt) {
+        return new StmtNode.Return(stmt.keyword, expr(stmt.value));
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        return new StmtNode.Var(stmt.name, expr(stmt.initializer), stmt.slot);
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new StmtNode.While(expr(stmt.condition), stmt(stmt.body));
+    }
+
+    @Override
+    public StmtNode visitBreakStmt(Stmt.Break stmt) {
+        return new StmtNode.Break(stmt.self);
+    }
+
+    private ExprNode expr(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private List<ExprNode> exprs(List<Expr> items) {
+        List<ExprNode> nodes = new ArrayList<>(items.size());
+        for (Expr item : items) {
+            nodes.add(expr(item));
+        }
+        return nodes;
+    }
+
+    private StmtNode stmt(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    private List<StmtNode> stmts(List<Stmt> items) {
+        List<StmtNode> nodes = new ArrayList<>(items.size());
+        for (Stmt item : items) {
+            nodes.add(stmt(item));
+        }
+        return nodes;
+    }
+}
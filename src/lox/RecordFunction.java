@@ -0,0 +1,45 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Runtime value of a function under the records engine: its declaration
+ * record, bound to the environment it was declared in.
+ */
+public class RecordFunction implements LoxCallable {
+    private final StmtNode.Function declaration;
+    private final Environment closure;
+    private final RecordInterpreter engine;
+
+    RecordFunction(StmtNode.Function declaration, Environment closure, RecordInterpreter engine) {
+        this.declaration = declaration;
+        this.closure = closure;
+        this.engine = engine;
+    }
+
+    @Override
+    public int arity() {
+        return declaration.params().size();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> args) {
+        return invoke(args.toArray());
+    }
+
+    Object invoke(Object[] args) {
+        Environment frame = closure;
+        if (declaration.locals() > 0) {
+            frame = new Environment(closure, declaration.locals());
+            for (int i = 0; i < args.length; i++) {
+                frame.define(i, args[i]);
+            }
+        }
+        return engine.call(declaration.body(), frame);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + declaration.name().lexeme + ">";
+    }
+}
@@ -0,0 +1,231 @@
+package lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static lox.Completion.*;
+
+/**
+ * Engine that runs the program as ExprNode and StmtNode records, selected with
+ * --engine=records. It behaves like the Interpreter, but picks what to do with
+ * a switch over the sealed node types instead of a Visitor, so a node costs one
+ * type switch rather than an accept call followed by a visit call.
+ * Records can't hold the Global cell the Interpreter caches on a node, so
+ * globals are looked up by symbol in the globals table every time.
+ */
+public class RecordInterpreter implements Engine {
+    final Environment globals = new Environment();
+    private Environment env = globals;
+    private Object returnValue;
+
+    public RecordInterpreter() {
+        Interpreter.defineNatives(globals);
+    }
+
+    @Override
+    public void interpret(List<Stmt> stmts) {
+        try {
+            executeList(RecordAst.convert(stmts));
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    /**
+     * Runs a function body in the frame given.
+     */
+    Object call(List<StmtNode> body, Environment frame) {
+        if (executeBlock(body, frame) == RETURN) return takeReturnValue();
+        return null;
+    }
+
+    private Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    private Object evaluate(ExprNode expr) {
+        return switch (expr) {
+            case ExprNode.Literal literal -> literal.value();
+            case ExprNode.Variable variable -> variable(variable);
+            case ExprNode.Binary binary -> binary(binary);
+            case ExprNode.Call call -> call(call);
+            case ExprNode.Logical logical -> logical(logical);
+            case ExprNode.Unary unary -> unary(unary);
+            case ExprNode.Assign assign -> assign(assign);
+            case ExprNode.Grouping(ExprNode expression) -> evaluate(expression);
+        };
+    }
+
+    private Object variable(ExprNode.Variable expr) {
+        if (expr.depth() >= 0) return env.getAt(expr.depth(), expr.slot());
+        return globals.cell(expr.name().symbol).get(expr.name());
+    }
+
+    private Object assign(ExprNode.Assign expr) {
+        Object value = evaluate(expr.value());
+        if (expr.depth() >= 0) {
+            env.assignAt(expr.depth(), expr.slot(), value);
+        } else {
+            globals.cell(expr.name().symbol).assign(expr.name(), value);
+        }
+        return value;
+    }
+
+    private Object logical(ExprNode.Logical expr) {
+        Object left = evaluate(expr.left());
+        if (expr.op().type == TokenType.OR) {
+            if (Interpreter.isTruthLike(left)) return left;
+        } else if (!Interpreter.isTruthLike(left)) {
+            return left;
+        }
+        return evaluate(expr.right());
+    }
+
+    private Object unary(ExprNode.Unary expr) {
+        Object right = evaluate(expr.right());
+        if (expr.op().type == TokenType.BANG) return !Interpreter.isTruthLike(right);
+        if (!(right instanceof Double)) throw new RuntimeError(expr.op(), "Operand must be a number.");
+        return -(double) right;
+    }
+
+    private Object binary(ExprNode.Binary expr) {
+        Object left = evaluate(expr.left());
+        Object right = evaluate(expr.right());
+        Token op = expr.op();
+
+        switch (op.type) {
+            case EQUAL_EQUAL:
+                return Interpreter.isEqual(left, right);
+            case BANG_EQUAL:
+                return !Interpreter.isEqual(left, right);
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof CharSequence a && right instanceof CharSequence b) {
+                    if (!Rope.fits(a, b)) throw new RuntimeError(op, Rope.TOO_LONG);
+                    return Rope.concat(a, b);
+                }
+                throw new RuntimeError(op, "Operands must be two integers or strings");
+        }
+
+        if (!(left instanceof Double && right instanceof Double)) {
+            throw new RuntimeError(op, "Operands must be a number.");
+        }
+        double a = (double) left;
+        double b = (double) right;
+        return switch (op.type) {
+            case MINUS -> a - b;
+            case SLASH -> a / b;
+            case STAR -> a * b;
+            case LESS -> a < b;
+            case GREATER -> a > b;
+            case LESS_EQUAL -> a <= b;
+            case GREATER_EQUAL -> a >= b;
+            default -> throw new IllegalStateException("Not a binary operator: " + op.type);
+        };
+    }
+
+    private Object call(ExprNode.Call expr) {
+        Object callee = evaluate(expr.callee());
+        List<ExprNode> args = expr.args();
+        Object[] values = new Object[args.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(args.get(i));
+        }
+
+        if (!(callee instanceof LoxCallable function)) {
+            throw new RuntimeError(expr.paren(), "Can only call functions and classes");
+        }
+        if (values.length != function.arity()) {
+            throw new RuntimeError(expr.paren(), "Expected " + function.arity() +
+                    " args, but got " + values.length + " args.");
+        }
+
+        if (function instanceof RecordFunction record) return record.invoke(values);
+        try {
+            return function.call(null, Arrays.asList(values));
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren(), error.getMessage());
+        }
+    }
+
+    private Completion execute(StmtNode stmt) {
+        return switch (stmt) {
+            case StmtNode.Expression(ExprNode expression) -> {
+                evaluate(expression);
+                yield NORMAL;
+            }
+            case StmtNode.Var var -> {
+                Object value = var.initializer() == null ? null : evaluate(var.initializer());
+                define(var.name(), var.slot(), value);
+                yield NORMAL;
+            }
+            case StmtNode.Block block -> {
+                if (block.locals() == 0) yield executeList(block.statements());
+                yield executeBlock(block.statements(), new Environment(env, block.locals()));
+            }
+            case StmtNode.If branch -> {
+                if (Interpreter.isTruthLike(evaluate(branch.condition()))) yield execute(branch.thenBranch());
+                yield branch.elseBranch() == null ? NORMAL : execute(branch.elseBranch());
+            }
+            case StmtNode.While loop -> whileLoop(loop);
+            case StmtNode.Print(ExprNode expression) -> {
+                System.out.print(Interpreter.stringify(evaluate(expression)) + System.lineSeparator());
+                yield NORMAL;
+            }
+            case StmtNode.Return ret -> {
+                returnValue = ret.value() == null ? null : evaluate(ret.value());
+                yield RETURN;
+            }
+            case StmtNode.Function function -> {
+                define(function.name(), function.slot(), new RecordFunction(function, env, this));
+                yield NORMAL;
+            }
+            case StmtNode.Break ignored -> BREAK;
+        };
+    }
+
+    /**
+     * A BREAK from the body ends this loop only; a RETURN keeps unwinding.
+     */
+    private Completion whileLoop(StmtNode.While loop) {
+        while (Interpreter.isTruthLike(evaluate(loop.condition()))) {
+            Completion completion = execute(loop.body());
+            if (completion == BREAK) break;
+            if (completion == RETURN) return RETURN;
+        }
+        return NORMAL;
+    }
+
+    private void define(Token name, int slot, Object value) {
+        if (slot < 0) {
+            globals.cell(name.symbol).define(value);
+        } else {
+            env.define(slot, value);
+        }
+    }
+
+    /**
+     * @return NORMAL, or the first other completion, which stops the list
+     */
+    private Completion executeList(List<StmtNode> stmts) {
+        for (StmtNode stmt : stmts) {
+            Completion completion = execute(stmt);
+            if (completion != NORMAL) return completion;
+        }
+        return NORMAL;
+    }
+
+    private Completion executeBlock(List<StmtNode> stmts, Environment env) {
+        Environment prev = this.env;
+        try {
+            this.env = env;
+            return executeList(stmts);
+        } finally {
+            this.env = prev;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static pass run between the Parser and the Interpreter.
+ * Every local variable gets a slot in the frame of its scope, and every
+ * variable reference is annotated with how many frames out (depth) and at which
+ * slot its variable lives. References that resolve to nothing are globals.
+ * <br>
+ * Blocks that declare nothing get no scope, and therefore no frame at runtime.
+ */
+public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final ErrorReporter errors;
+    private final List<Scope> scopes = new ArrayList<>();
+    private int loopDepth = 0;
+    private Stmt.Function function = null;
+
+    private static class Scope {
+        final Map<Integer, Integer> slots = new HashMap<>();
+        int size = 0;
+    }
+
+    Resolver(ErrorReporter errors) {
+        this.errors = errors;
+    }
+
+    protected void resolve(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            resolve(stmt);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (!declaresLocals(stmt.statements)) {
+            resolve(stmt.statements);
+            return null;
+        }
+
+        beginScope();
+        resolve(stmt.statements);
+        stmt.locals = endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    /**
+     * The name is declared before the body is resolved, so functions can recurse.
+     * Parameters take the first slots of the function's frame, in order.
+     * A function declared inside another one may capture its frame, so the
+     * enclosing function is marked as declaring functions.
+     */
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        stmt.slot = declare(stmt.name, true);
+        if (stmt.body instanceof LazyBody) return null;
+        resolveFunction(stmt);
+        return null;
+    }
+
+    /**
+     * Resolves the parameters and body of a function whose name is declared.
+     * A LazyBody calls this on a Resolver of its own once it is parsed.
+     */
+    void resolveFunction(Stmt.Function stmt) {
+        if (function != null) function.declaresFunctions = true;
+        // Set again by any function declared in the body; a LazyBody resolves its function twice.
+        stmt.declaresFunctions = false;
+
+        Stmt.Function enclosingFunction = function;
+        int enclosingLoopDepth = loopDepth;
+        function = stmt;
+        loopDepth = 0;
+
+        if (!stmt.params.isEmpty() || declaresLocals(stmt.body)) {
+            beginScope();
+            for (Token param : stmt.params) {
+                declare(param, false);
+            }
+            resolve(stmt.body);
+            stmt.locals = endScope();
+        } else {
+            resolve(stmt.body);
+        }
+
+        function = enclosingFunction;
+        loopDepth = enclosingLoopDepth;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        if (stmt.elseBranch != null) resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (function == null) {
+            errors.error(stmt.keyword, "Can't return from top-level code.");
+        }
+
+        if (stmt.value != null) resolve(stmt.value);
+        return null;
+    }
+
+    /**
+     * The initializer is resolved before the name is declared, so
+     * {@code var a = a + 1;} reads the enclosing a, as it always has.
+     */
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) resolve(stmt.initializer);
+        stmt.slot = declare(stmt.name, true);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        loopDepth++;
+        resolve(stmt.body);
+        loopDepth--;
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (loopDepth == 0) {
+            errors.error(stmt.self, "Break statement not enclosed");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+        int scope = scopeOf(expr.name);
+        if (scope >= 0) {
+            expr.depth = scopes.size() - 1 - scope;
+            expr.slot = scopes.get(scope).slots.get(expr.name.symbol);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+        for (Expr arg : expr.args) {
+            resolve(arg);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        int scope = scopeOf(expr.name);
+        if (scope >= 0) {
+            expr.depth = scopes.size() - 1 - scope;
+            expr.slot = scopes.get(scope).slots.get(expr.name.symbol);
+        }
+        return null;
+    }
+
+    /**
+     * @return index of the innermost scope declaring name, or -1 for a global
+     */
+    private int scopeOf(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).slots.containsKey(name.symbol)) return i;
+        }
+        return -1;
+    }
+
+    private void beginScope() {
+        scopes.add(new Scope());
+    }
+
+    /**
+     * @return number of slots the frame for this scope needs
+     */
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).size;
+    }
+
+    /**
+     * Gives a name a slot in the innermost scope.
+     * Redeclaring a name in the same scope reuses its slot, like the old
+     * HashMap environments did, unless a fresh slot is required (parameters).
+     * @return the slot, or -1 if the name is a global
+     */
+    private int declare(Token name, boolean reuse) {
+        if (scopes.isEmpty()) return -1;
+
+        Scope scope = scopes.get(scopes.size() - 1);
+        Integer existing = scope.slots.get(name.symbol);
+        if (reuse && existing != null) return existing;
+
+        int slot = scope.size++;
+        scope.slots.put(name.symbol, slot);
+        return slot;
+    }
+
+    /**
+     * Declarations only appear directly inside a block or a function body,
+     * so a shallow scan tells whether a scope is needed at all.
+     */
+    private static boolean declaresLocals(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            if (stmt instanceof Stmt.Var || stmt instanceof Stmt.Function) return true;
+        }
+        return false;
+    }
+}
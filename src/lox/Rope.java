@@ -0,0 +1,101 @@
+package lox;
+
+import java.util.ArrayDeque;
+
+/**
+ * A Lox string made by +, which points at its two sides instead of copying
+ * them. Building a string piece by piece, as in s = s + x in a loop, then
+ * takes time linear in its length rather than quadratic. The chars are
+ * copied out, once, the first time something needs them as a String:
+ * stringify for print, isEqual, or anything else that calls toString.
+ * <br>
+ * Joins shorter than MIN_LENGTH are copied into a String right away, so
+ * small strings stay Strings. Either side can be a String or a Rope, which
+ * is why engines check for CharSequence where they used to check for String.
+ * A Rope is not thread-safe; it stays with the script that made it, and is
+ * turned into a String before leaving it, through LoxContext.get or a
+ * GlobalSnapshot.
+ */
+final class Rope implements CharSequence {
+    private static final int MIN_LENGTH = 32;
+    /** Longest string that still fits in one char[] when flattened. */
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+    static final String TOO_LONG = "Joined string would be too long.";
+
+    private final int length;
+    /** The two sides, or null once flattened. */
+    private CharSequence left;
+    private CharSequence right;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right) {
+        this.length = Math.addExact(left.length(), right.length());
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Engines check this before concat, to raise TOO_LONG at the +.
+     * @return whether the two strings joined would be short enough to flatten
+     */
+    static boolean fits(CharSequence left, CharSequence right) {
+        return left.length() <= MAX_LENGTH - right.length();
+    }
+
+    /**
+     * @return the two strings joined, as a String if short, otherwise a Rope
+     */
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        if (left.length() < MIN_LENGTH - right.length()) return left.toString() + right;
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+        return new Rope(left, right);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Copies the pieces into one String, the first time, walking the tree
+     * with a stack of its own, since a rope built in a loop is as deep as the
+     * loop was long. Pieces are copied right to left, each to the end of
+     * what is still unfilled.
+     */
+    @Override
+    public String toString() {
+        if (flat != null) return flat;
+
+        char[] chars = new char[length];
+        int end = length;
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence piece = pending.pop();
+            if (piece instanceof Rope rope && rope.flat == null) {
+                pending.push(rope.left);
+                pending.push(rope.right);
+                continue;
+            }
+            String string = piece.toString();
+            end -= string.length();
+            string.getChars(0, string.length(), chars, end);
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+        return flat;
+    }
+}
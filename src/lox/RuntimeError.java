@@ -2,10 +2,21 @@ package lox;
 
 public class RuntimeError extends RuntimeException {
     final protected Token token;
+    final protected int line;
 
     public RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        this.line = token.line;
     }
-}
 
+    /**
+     * For errors raised where there is no token at hand, such as in the VM,
+     * which only keeps a line table.
+     */
+    public RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
+    }
+}
@@ -1,55 +1,85 @@
 package lox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import static lox.TokenType.*;
 
+/**
+ * Turns source text into tokens.
+ * Tokens are written into a TokenBuffer as offsets into the source chars; no
+ * Token objects or substrings are made while scanning, except one String per
+ * distinct identifier name.
+ */
 public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final char[] source;
+    private final int length;
+    private final TokenBuffer tokens;
+    private final ErrorReporter errors;
     private int start = 0;
     private int current = 0;
-    private int line = 1;
-
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
-        keywords.put("break", BREAK);
-    }
+    private int line;
+    private boolean endsInComment = false;
+    private boolean symbolsFull = false;
 
     protected Scanner(String source) {
+        this(source.toCharArray());
+    }
+
+    protected Scanner(char[] source) {
+        this(source, source.length);
+    }
+
+    protected Scanner(char[] source, int length) {
+        this(source, length, Lox.CONSOLE);
+    }
+
+    /**
+     * @param length number of chars of source to scan, from the start
+     * @param errors where to report malformed tokens
+     */
+    Scanner(char[] source, int length, ErrorReporter errors) {
+        this(source, length, 1, errors);
+    }
+
+    /**
+     * @param line line the source starts on, for a piece cut from a larger text
+     */
+    Scanner(char[] source, int length, int line, ErrorReporter errors) {
         this.source = source;
+        this.length = length;
+        this.line = line;
+        this.tokens = new TokenBuffer(source);
+        this.errors = errors;
     }
 
-    protected List<Token> scanTokens() {
+    /**
+     * @return the tokens in packed form, ending with EOF
+     */
+    TokenBuffer scan() {
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
+        tokens.add(EOF, current, 0, line);
         return tokens;
     }
 
+    /**
+     * @return the tokens as Token objects, for callers that want a list
+     */
+    protected List<Token> scanTokens() {
+        return scan().toList();
+    }
+
+    /**
+     * @return whether the source ended in a line comment, which any text
+     * after it on the same line would have been part of
+     */
+    boolean endsInComment() {
+        return endsInComment;
+    }
+
     private void scanToken() {
         char c = advance();
         switch (c) {
@@ -86,14 +116,15 @@ public class Scanner {
             case '/':
                 if (match('/')) {
                     while (peek() != '\n' && !isAtEnd()) advance();
+                    if (isAtEnd()) endsInComment = true;
                 } else if (match('*')) {
-                    while (peek() != '*' && peekNext() != '/' && !isAtEnd()) {
+                    while (!(peek() == '*' && peekNext() == '/') && !isAtEnd()) {
+                        if (peek() == '\n') line++;
                         advance();
-                        if(peek() == '\n') line++;
-                    };
+                    }
 
                     if (isAtEnd()) {
-                        Lox.error(line, "Unterminated comment");
+                        errors.error(line, "Unterminated comment");
                         break;
                     }
                     // Consume * and /
@@ -131,7 +162,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character: '" + c + "'");
+                    errors.error(line, "Unexpected character: '" + c + "'");
                 }
                 break;
         }
@@ -139,25 +170,20 @@ public class Scanner {
 
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= length;
     }
 
     private char advance() {
-        return source.charAt(current++);
+        return source[current++];
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
-    }
-
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(type, start, current - start, line);
     }
 
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (source[current] != expected) return false;
 
         current++;
         return true;
@@ -165,12 +191,12 @@ public class Scanner {
 
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return source[current];
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (current + 1 >= length) return '\0';
+        return source[current + 1];
     }
 
     private void string() {
@@ -180,15 +206,14 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string");
+            errors.error(line, "Unterminated string");
             return;
         }
         //String is terminated
         advance();
 
-        // Trimming quote marks
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        // The value, without quote marks, is only built if the Parser needs it
+        addToken(STRING);
     }
 
     private void number() {
@@ -200,7 +225,7 @@ public class Scanner {
             while (isDigit(peek()));
         };
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER);
 
 
     }
@@ -208,10 +233,70 @@ public class Scanner {
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = IDENTIFIER;
-        addToken(type);
+        TokenType type = keyword();
+        if (type != IDENTIFIER) {
+            addToken(type);
+            return;
+        }
+        int symbol;
+        try {
+            symbol = tokens.symbol(start, current - start);
+        } catch (IllegalStateException full) {
+            // The SymbolTable is at MAX_SIZE; the name is still spelled right for the Parser.
+            if (!symbolsFull) errors.error(line, full.getMessage());
+            symbolsFull = true;
+            symbol = -1;
+        }
+        tokens.add(IDENTIFIER, start, current - start, line, symbol);
+    }
+
+    /**
+     * Recognizes keywords by switching on their first chars, then comparing
+     * the rest in place, so nothing is allocated or hashed.
+     * @return type of the keyword spelled by the current lexeme, or IDENTIFIER
+     */
+    private TokenType keyword() {
+        int length = current - start;
+        switch (source[start]) {
+            case 'a': return rest(1, length, "nd", AND);
+            case 'b': return rest(1, length, "reak", BREAK);
+            case 'c': return rest(1, length, "lass", CLASS);
+            case 'e': return rest(1, length, "lse", ELSE);
+            case 'f':
+                if (length > 1) {
+                    switch (source[start + 1]) {
+                        case 'a': return rest(2, length, "lse", FALSE);
+                        case 'o': return rest(2, length, "r", FOR);
+                        case 'u': return rest(2, length, "n", FUN);
+                    }
+                }
+                break;
+            case 'i': return rest(1, length, "f", IF);
+            case 'n': return rest(1, length, "il", NIL);
+            case 'o': return rest(1, length, "r", OR);
+            case 'p': return rest(1, length, "rint", PRINT);
+            case 'r': return rest(1, length, "eturn", RETURN);
+            case 's': return rest(1, length, "uper", SUPER);
+            case 't':
+                if (length > 1) {
+                    switch (source[start + 1]) {
+                        case 'h': return rest(2, length, "is", THIS);
+                        case 'r': return rest(2, length, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v': return rest(1, length, "ar", VAR);
+            case 'w': return rest(1, length, "hile", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    private TokenType rest(int offset, int length, String rest, TokenType type) {
+        if (length != offset + rest.length()) return IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++) {
+            if (source[start + offset + i] != rest.charAt(i)) return IDENTIFIER;
+        }
+        return type;
     }
 
     private boolean isAlpha(char c) {
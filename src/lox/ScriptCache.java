@@ -0,0 +1,127 @@
+package lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Cache of parsed, optimized and resolved scripts, so a script that hasn't
+ * changed starts without being scanned, parsed or resolved.
+ * A .loxc file holds a header (magic, VERSION and the SHA-256 of the script's
+ * bytes) followed by the tree as written by AstWriter. It is only used if the
+ * header matches, so an edited script or a newer interpreter just misses.
+ * <br>
+ * Without a directory, foo.jlox is cached next to it as foo.loxc. With one,
+ * the cache file is named after the hash, so any copy of the same script hits.
+ * Caching is best effort: a cache that can't be read or written is ignored.
+ * <br>
+ * The script is read once, and a miss compiles those same bytes (source),
+ * so a script edited while it is loaded can't be cached under the hash of
+ * another version.
+ */
+final class ScriptCache {
+    /** Bump whenever the syntax tree, the Resolver's annotations or AstWriter's format change. */
+    static final int VERSION = 1;
+    private static final int MAGIC = 0x4C4F5843; // "LOXC"
+    private static final int HEADER = 4 + 4 + 32;
+
+    private final Path script;
+    private final Path directory;
+    private ByteBuffer source;
+    private byte[] hash;
+
+    /**
+     * @param directory where to keep cache files, or null to keep them next to scripts
+     */
+    ScriptCache(Path script, Path directory) {
+        this.script = script;
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cached tree, or null if there is none for this version of the script
+     */
+    List<Stmt> load() throws IOException {
+        Path file = file();
+        if (!Files.isRegularFile(file)) return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER || in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            byte[] cachedHash = new byte[32];
+            in.get(cachedHash);
+            if (!Arrays.equals(cachedHash, hash())) return null;
+            return new AstReader(in).read();
+        } catch (RuntimeException e) {
+            // Truncated or corrupt; it gets rewritten after the script is parsed.
+            return null;
+        }
+    }
+
+    /**
+     * Writes the tree of the script, through a temporary file so that a
+     * concurrent load never sees half of it.
+     */
+    void store(List<Stmt> stmts) {
+        try {
+            byte[] tree = new AstWriter().write(stmts);
+            ByteBuffer out = ByteBuffer.allocate(HEADER + tree.length);
+            out.putInt(MAGIC).putInt(VERSION).put(hash()).put(tree);
+
+            Path file = file();
+            if (directory != null) Files.createDirectories(directory);
+            Path temp = file.resolveSibling(file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+            try {
+                Files.write(temp, out.array());
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // Read-only location and the like; the script still runs.
+        }
+    }
+
+    private Path file() throws IOException {
+        if (directory != null) return directory.resolve(HexFormat.of().formatHex(hash()) + ".loxc");
+
+        String name = script.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        return script.resolveSibling(name + ".loxc");
+    }
+
+    /**
+     * @return the script's bytes, read on first use, which are the ones hashed
+     */
+    ByteBuffer source() throws IOException {
+        // Read, not mapped: a mapping would show an edit made after hashing.
+        if (source == null) source = ByteBuffer.wrap(Files.readAllBytes(script));
+        return source.duplicate();
+    }
+
+    /**
+     * @return SHA-256 of the script's bytes, computed on first use
+     */
+    private byte[] hash() throws IOException {
+        if (hash != null) return hash;
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source());
+            hash = digest.digest();
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs many small scripts at once, each on a virtual thread of its own, for
+ * a service that runs scripts for its clients.
+ * <pre>
+ * try (ScriptExecutor executor = new ScriptExecutor(1000, 256)) {
+ *     executor.submit("var total = price * count;", Map.of("price", 2.5, "count", 4))
+ *             .thenApply(result -> result.get("total"));  // 10.0
+ * }
+ * </pre>
+ * A source is compiled once into a LoxEngine.Program that every later run of
+ * the same source shares; the most recently used ones are kept. Each run gets
+ * its own globals, forked from a snapshot that has the natives and whatever
+ * prelude the executor was given, and its own output, so runs see nothing of
+ * each other.
+ * <br>
+ * Scripts submitted and not yet finished are limited to the capacity, the
+ * ones not running waiting for a carrier thread. Once that many are in,
+ * submit blocks until one finishes, so a caller submitting faster than
+ * scripts run is slowed down instead of piling up work.
+ * <br>
+ * Every distinct name in a source or a binding keeps a SymbolTable ID for the
+ * life of the process, after its Program has left the cache too. A run only
+ * pays for the globals it uses, but the table grows with the variety of names
+ * clients send. Once it holds SymbolTable.MAX_SIZE names, a source with a new
+ * one fails with a LoxEngine.CompileError, and a binding with a new name with
+ * an IllegalStateException.
+ */
+public final class ScriptExecutor implements AutoCloseable {
+    /**
+     * What a run left behind.
+     */
+    public static final class Result {
+        private final String output;
+        private final LoxContext context;
+
+        private Result(String output, LoxContext context) {
+            this.output = output;
+            this.context = context;
+        }
+
+        /**
+         * @return everything the script printed
+         */
+        public String output() {
+            return output;
+        }
+
+        /**
+         * @return value of a global at the end of the run, or null if it isn't defined
+         */
+        public Object get(String name) {
+            return context.get(name);
+        }
+    }
+
+    private final LoxEngine engine = new LoxEngine();
+    private final GlobalSnapshot prelude;
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore slots;
+    private final Map<String, LoxEngine.Program> programs;
+
+    /**
+     * @param capacity most scripts submitted and not yet finished
+     * @param cachedPrograms most compiled sources kept, 0 to compile every run
+     */
+    public ScriptExecutor(int capacity, int cachedPrograms) {
+        this(capacity, cachedPrograms, null);
+    }
+
+    /**
+     * @param prelude globals every run starts with, from LoxContext.snapshot,
+     * or null for only the natives
+     * @see #ScriptExecutor(int, int)
+     */
+    public ScriptExecutor(int capacity, int cachedPrograms, GlobalSnapshot prelude) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.slots = new Semaphore(capacity);
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LoxEngine.Program> eldest) {
+                return size() > cachedPrograms;
+            }
+        };
+        if (prelude == null) {
+            Environment natives = new Environment();
+            Interpreter.defineNatives(natives);
+            prelude = natives.snapshot();
+        }
+        this.prelude = prelude;
+    }
+
+    /**
+     * Compiles the source, or takes its Program from the cache, and runs it.
+     * A source with errors completes the future with a LoxEngine.CompileError.
+     * @throws InterruptedException if interrupted while waiting for room
+     * @see #submit(LoxEngine.Program, Map)
+     */
+    public CompletableFuture<Result> submit(String source, Map<String, ?> bindings) throws InterruptedException {
+        return start(source, null, bindings);
+    }
+
+    /**
+     * Runs the program with the bindings defined as globals, once there is room.
+     * A runtime error completes the future with the RuntimeError.
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public CompletableFuture<Result> submit(LoxEngine.Program program, Map<String, ?> bindings)
+            throws InterruptedException {
+        return start(null, program, bindings);
+    }
+
+    private CompletableFuture<Result> start(String source, LoxEngine.Program program, Map<String, ?> bindings)
+            throws InterruptedException {
+        slots.acquire();
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        try {
+            threads.execute(() -> {
+                try {
+                    result.complete(run(program != null ? program : program(source), bindings));
+                } catch (Throwable error) {
+                    result.completeExceptionally(error);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException rejected) {
+            // Closed, so the task never started to give its slot back.
+            slots.release();
+            throw rejected;
+        }
+        return result;
+    }
+
+    private LoxEngine.Program program(String source) {
+        LoxEngine.Program program;
+        synchronized (programs) {
+            program = programs.get(source);
+        }
+        if (program != null) return program;
+
+        // Compiled outside the lock; two threads that race on a new source both compile it.
+        program = engine.compile(source);
+        synchronized (programs) {
+            programs.putIfAbsent(source, program);
+        }
+        return program;
+    }
+
+    private Result run(LoxEngine.Program program, Map<String, ?> bindings) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, false, StandardCharsets.UTF_8);
+        LoxContext context = new LoxContext(out, new PrintStream(OutputStream.nullOutputStream()),
+                prelude.fork());
+        bindings.forEach(context::define);
+        context.execute(program);
+        out.flush();
+        return new Result(output.toString(StandardCharsets.UTF_8), context);
+    }
+
+    /**
+     * Waits for every submitted script to finish; nothing can be submitted after.
+     */
+    @Override
+    public void close() {
+        threads.close();
+    }
+}
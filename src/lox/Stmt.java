@@ -25,6 +25,7 @@ public abstract class Stmt {
             return visitor.visitBlockStmt(this);
         }
         final List<Stmt> statements;
+        int locals;
     }
     public static class Expression extends Stmt {
         public Expression(Expr expression) {
@@ -51,6 +52,9 @@ public abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        int slot = -1;
+        int locals;
+        boolean declaresFunctions;
     }
     public static class If extends Stmt {
         public If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -103,6 +107,7 @@ public abstract class Stmt {
         }
         final Token name;
         final Expr initializer;
+        int slot = -1;
     }
     public static class While extends Stmt {
         public While(Expr condition, Stmt body) {
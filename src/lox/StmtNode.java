@@ -0,0 +1,19 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Generated by tool.GenerateAst --records from the same definitions as Stmt.
+ * Build one with RecordAst.convert once the Resolver has run.
+ */
+public sealed interface StmtNode {
+    record Block(List<StmtNode> statements, int locals) implements StmtNode {}
+    record Expression(ExprNode expression) implements StmtNode {}
+    record Function(Token name, List<Token> params, List<StmtNode> body, int slot, int locals, boolean declaresFunctions) implements StmtNode {}
+    record If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) implements StmtNode {}
+    record Print(ExprNode expression) implements StmtNode {}
+    record Return(Token keyword, ExprNode value) implements StmtNode {}
+    record Var(Token name, ExprNode initializer, int slot) implements StmtNode {}
+    record While(ExprNode condition, StmtNode body) implements StmtNode {}
+    record Break(Token self) implements StmtNode {}
+}
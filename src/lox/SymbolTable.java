@@ -0,0 +1,54 @@
+package lox;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every distinct identifier a small int ID, the same for every script
+ * and REPL line run by this process. Names are then compared as ints, and the
+ * global Environment uses the IDs as keys of its table.
+ * Looking up a name that already has an ID takes no lock, so threads binding
+ * the same globals over and over don't wait on each other; only new names do.
+ * <br>
+ * Names are never removed, so a process that compiles sources it doesn't
+ * control, such as a ScriptExecutor, keeps every name they ever used. MAX_SIZE
+ * bounds that: past it, new names are refused.
+ */
+final class SymbolTable {
+    static final int MAX_SIZE = 1 << 20;
+    static final String FULL = "Too many distinct names in this process.";
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[256];
+    private static int size = 0;
+
+    private SymbolTable() {}
+
+    /**
+     * @return the ID of name, assigned now if name was never seen before
+     * @throws IllegalStateException if name is new and MAX_SIZE names have IDs
+     */
+    static int id(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        return assign(name);
+    }
+
+    private static synchronized int assign(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+
+        if (size == MAX_SIZE) throw new IllegalStateException(FULL);
+        String[] current = names;
+        if (size == current.length) current = Arrays.copyOf(current, size * 2);
+        current[size] = name;
+        // Published before the ID, so whoever gets the ID can look the name up.
+        names = current;
+        ids.put(name, size);
+        return size++;
+    }
+
+    static String name(int id) {
+        return names[id];
+    }
+}
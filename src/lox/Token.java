@@ -5,12 +5,19 @@ public class Token {
     final String lexeme;
     final Object literal;
     final int line;
+    /** ID of the name in the SymbolTable for an IDENTIFIER, -1 for any other token. */
+    final int symbol;
 
     protected Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, type == TokenType.IDENTIFIER ? SymbolTable.id(lexeme) : -1);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = symbol;
     }
 
     @Override
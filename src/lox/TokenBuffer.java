@@ -0,0 +1,127 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tokens of a source, packed into parallel arrays that point into the
+ * source chars, instead of a Token object and a substring per lexeme.
+ * The Parser reads types straight from the arrays, and only asks for a Token
+ * when one goes into the syntax tree. Lexemes and literals are built then,
+ * through an Interner, so every distinct spelling becomes a String once.
+ * Identifiers carry their SymbolTable ID from the start, and their lexeme is
+ * the name the SymbolTable holds for it.
+ */
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final char[] source;
+    private final Interner interner;
+    private byte[] types = new byte[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    private int[] symbols = new int[256];
+    private Token[] tokens;
+    private int count = 0;
+
+    TokenBuffer(char[] source) {
+        this.source = source;
+        this.interner = new Interner();
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        add(type, start, length, line, -1);
+    }
+
+    /**
+     * @param symbol SymbolTable ID of an identifier, -1 for any other token
+     */
+    void add(TokenType type, int start, int length, int line, int symbol) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+        }
+        symbols[count] = symbol;
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    /**
+     * @return offset in the source of the first char of the token
+     */
+    int start(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @return the text of a range of the source, interned
+     */
+    String text(int start, int length) {
+        return interner.intern(source, start, length);
+    }
+
+    /**
+     * @return the SymbolTable ID of the name spelled by a range of the source
+     */
+    int symbol(int start, int length) {
+        return interner.symbol(source, start, length);
+    }
+
+    String lexeme(int index) {
+        if (symbols[index] >= 0) return SymbolTable.name(symbols[index]);
+        return text(starts[index], lengths[index]);
+    }
+
+    /**
+     * @return the value of a NUMBER or STRING token, null for any other
+     */
+    Object literal(int index) {
+        return switch (type(index)) {
+            case NUMBER -> Double.parseDouble(lexeme(index));
+            case STRING -> text(starts[index] + 1, lengths[index] - 2);
+            default -> null;
+        };
+    }
+
+    /**
+     * @return the token at index, built on first request
+     */
+    Token token(int index) {
+        if (tokens == null) tokens = new Token[count];
+        Token token = tokens[index];
+        if (token == null) {
+            token = new Token(type(index), lexeme(index), literal(index), lines[index], symbols[index]);
+            tokens[index] = token;
+        }
+        return token;
+    }
+
+    List<Token> toList() {
+        List<Token> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(token(i));
+        }
+        return list;
+    }
+}
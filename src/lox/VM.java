@@ -0,0 +1,346 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stack-based virtual machine running bytecode produced by the Compiler.
+ * Selected with --engine=vm. Lox calls push a CallFrame instead of recursing in
+ * Java; natives are called directly.
+ * <br>
+ * Values are unboxed NanBox longs. The operand stack is a long[] with an
+ * Object[] side table for heap values, and so are the VM's frames, so
+ * arithmetic on locals allocates nothing. Values are only boxed where they
+ * leave the VM: globals and native calls.
+ */
+public class VM implements Engine {
+    private static final int FRAMES_MAX = 1024;
+    private static final int STACK_PER_FRAME = 256;
+
+    private final Environment globals = new Environment();
+    private final ErrorReporter errors;
+    private long[] stack = new long[STACK_PER_FRAME];
+    private Object[] refs = new Object[STACK_PER_FRAME];
+    private int sp = 0;
+    private final CallFrame[] frames = new CallFrame[FRAMES_MAX];
+    private int frameCount = 0;
+
+    /**
+     * State of one active function call. The dispatch loop keeps ip and env in
+     * locals and only writes them back here when it calls out of the frame.
+     */
+    private static final class CallFrame {
+        CompiledFunction function;
+        int ip;
+        Environment env;
+    }
+
+    public VM() {
+        this(Lox.CONSOLE);
+    }
+
+    /**
+     * @param errors where compile errors found while translating to bytecode are reported
+     */
+    VM(ErrorReporter errors) {
+        this.errors = errors;
+        Interpreter.defineNatives(globals);
+        for (int i = 0; i < FRAMES_MAX; i++) {
+            frames[i] = new CallFrame();
+        }
+    }
+
+    @Override
+    public void interpret(List<Stmt> stmts) {
+        CompiledFunction script = new Compiler(globals, errors).compile(stmts);
+        if (errors.hadError()) return;
+
+        try {
+            pushFrame(script, globals);
+            run(0);
+        } catch (RuntimeError error) {
+            frameCount = 0;
+            Lox.runtimeError(error);
+        }
+        sp = 0;
+        Arrays.fill(refs, null);
+    }
+
+    /**
+     * Calls a VM function from outside the dispatch loop, e.g. from a native.
+     */
+    Object call(VMFunction function, List<Object> args) {
+        int base = frameCount;
+        int first = sp;
+        for (Object arg : args) {
+            push(arg);
+        }
+        Environment env = frameEnvironment(function, first);
+        sp = first;
+
+        pushFrame(function.function, env);
+        run(base);
+        sp--;
+        return NanBox.box(stack[sp], refs[sp]);
+    }
+
+    private void push(Object value) {
+        stack[sp] = NanBox.unbox(value);
+        refs[sp] = value;
+        sp++;
+    }
+
+    private void pushFrame(CompiledFunction function, Environment env) {
+        if (frameCount == FRAMES_MAX) {
+            throw new RuntimeError(currentLine(), "Stack overflow.");
+        }
+        CallFrame frame = frames[frameCount++];
+        frame.function = function;
+        frame.ip = 0;
+        frame.env = env;
+
+        if (stack.length - sp < STACK_PER_FRAME) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+            refs = Arrays.copyOf(refs, refs.length * 2);
+        }
+    }
+
+    /**
+     * Moves the arguments starting at stack index first into a new frame for the function.
+     */
+    private Environment frameEnvironment(VMFunction function, int first) {
+        CompiledFunction compiled = function.function;
+        if (compiled.locals == 0) return function.closure;
+
+        Environment env = new Environment(function.closure, compiled.locals, true);
+        for (int i = 0; i < compiled.arity; i++) {
+            env.store(i, stack[first + i], refs[first + i]);
+        }
+        return env;
+    }
+
+    /**
+     * Executes until the frame at index base returns.
+     * The result is left on top of the stack.
+     * @param base index the frame count drops back to when the call is done
+     */
+    private void run(int base) {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.function.chunk.code;
+        Object[] constants = frame.function.chunk.constants;
+        long[] constantBits = frame.function.chunk.constantBits;
+        int ip = frame.ip;
+        Environment env = frame.env;
+
+        for (;;) {
+            switch (code[ip++]) {
+                case OpCode.CONSTANT -> {
+                    int index = readShort(code, ip);
+                    stack[sp] = constantBits[index];
+                    refs[sp++] = constants[index];
+                    ip += 2;
+                }
+                case OpCode.NIL -> stack[sp++] = NanBox.NIL;
+                case OpCode.TRUE -> stack[sp++] = NanBox.TRUE;
+                case OpCode.FALSE -> stack[sp++] = NanBox.FALSE;
+                case OpCode.POP -> sp--;
+                case OpCode.GET_LOCAL -> {
+                    Environment frameEnv = env.ancestor(code[ip] & 0xff);
+                    int slot = readShort(code, ip + 1);
+                    stack[sp] = frameEnv.raw(slot);
+                    refs[sp++] = frameEnv.ref(slot);
+                    ip += 3;
+                }
+                case OpCode.SET_LOCAL -> {
+                    env.ancestor(code[ip] & 0xff).store(readShort(code, ip + 1), stack[sp - 1], refs[sp - 1]);
+                    ip += 3;
+                }
+                case OpCode.DEFINE_LOCAL -> {
+                    sp--;
+                    env.store(readShort(code, ip), stack[sp], refs[sp]);
+                    ip += 2;
+                }
+                case OpCode.GET_GLOBAL -> {
+                    Global global = (Global) constants[readShort(code, ip)];
+                    if (!global.defined) throw error(frame, ip, "Undefined variable: " + global.name);
+                    push(global.value);
+                    ip += 2;
+                }
+                case OpCode.SET_GLOBAL -> {
+                    Global global = (Global) constants[readShort(code, ip)];
+                    if (!global.defined) throw error(frame, ip, "Undefined variable: " + global.name);
+                    global.value = NanBox.box(stack[sp - 1], refs[sp - 1]);
+                    ip += 2;
+                }
+                case OpCode.DEFINE_GLOBAL -> {
+                    sp--;
+                    ((Global) constants[readShort(code, ip)]).define(NanBox.box(stack[sp], refs[sp]));
+                    ip += 2;
+                }
+                case OpCode.EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = NanBox.bool(NanBox.isEqual(stack[sp - 1], refs[sp - 1], stack[sp], refs[sp]));
+                }
+                case OpCode.GREATER -> {
+                    checkNumberOperands(frame, ip);
+                    sp--;
+                    stack[sp - 1] = NanBox.bool(NanBox.asNumber(stack[sp - 1]) > NanBox.asNumber(stack[sp]));
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    checkNumberOperands(frame, ip);
+                    sp--;
+                    stack[sp - 1] = NanBox.bool(NanBox.asNumber(stack[sp - 1]) >= NanBox.asNumber(stack[sp]));
+                }
+                case OpCode.LESS -> {
+                    checkNumberOperands(frame, ip);
+                    sp--;
+                    stack[sp - 1] = NanBox.bool(NanBox.asNumber(stack[sp - 1]) < NanBox.asNumber(stack[sp]));
+                }
+                case OpCode.LESS_EQUAL -> {
+                    checkNumberOperands(frame, ip);
+                    sp--;
+                    stack[sp - 1] = NanBox.bool(NanBox.asNumber(stack[sp - 1]) <= NanBox.asNumber(stack[sp]));
+                }
+                case OpCode.ADD -> {
+                    long b = stack[--sp];
+                    long a = stack[sp - 1];
+                    if (NanBox.isNumber(a) && NanBox.isNumber(b)) {
+                        stack[sp - 1] = NanBox.number(NanBox.asNumber(a) + NanBox.asNumber(b));
+                    } else if (a == NanBox.REF && b == NanBox.REF
+                            && refs[sp - 1] instanceof CharSequence left && refs[sp] instanceof CharSequence right) {
+                        if (!Rope.fits(left, right)) throw error(frame, ip, Rope.TOO_LONG);
+                        refs[sp - 1] = Rope.concat(left, right);
+                    } else {
+                        throw error(frame, ip, "Operands must be two integers or strings");
+                    }
+                }
+                case OpCode.SUBTRACT -> {
+                    checkNumberOperands(frame, ip);
+                    sp--;
+                    stack[sp - 1] = NanBox.number(NanBox.asNumber(stack[sp - 1]) - NanBox.asNumber(stack[sp]));
+                }
+                case OpCode.MULTIPLY -> {
+                    checkNumberOperands(frame, ip);
+                    sp--;
+                    stack[sp - 1] = NanBox.number(NanBox.asNumber(stack[sp - 1]) * NanBox.asNumber(stack[sp]));
+                }
+                case OpCode.DIVIDE -> {
+                    checkNumberOperands(frame, ip);
+                    sp--;
+                    stack[sp - 1] = NanBox.number(NanBox.asNumber(stack[sp - 1]) / NanBox.asNumber(stack[sp]));
+                }
+                case OpCode.NOT -> stack[sp - 1] = NanBox.bool(NanBox.isFalsey(stack[sp - 1]));
+                case OpCode.NEGATE -> {
+                    if (!NanBox.isNumber(stack[sp - 1])) {
+                        throw error(frame, ip, "Operand must be a number.");
+                    }
+                    stack[sp - 1] = NanBox.number(-NanBox.asNumber(stack[sp - 1]));
+                }
+                case OpCode.PRINT -> {
+                    sp--;
+                    System.out.print(NanBox.stringify(stack[sp], refs[sp]) + System.lineSeparator());
+                }
+                case OpCode.JUMP -> ip += readShort(code, ip) + 2;
+                case OpCode.JUMP_IF_FALSE -> {
+                    if (NanBox.isFalsey(stack[sp - 1])) {
+                        ip += readShort(code, ip) + 2;
+                    } else {
+                        ip += 2;
+                    }
+                }
+                case OpCode.LOOP -> ip = ip + 2 - readShort(code, ip);
+                case OpCode.CALL -> {
+                    int argc = code[ip++] & 0xff;
+                    int calleeIndex = sp - argc - 1;
+                    Object callee = stack[calleeIndex] == NanBox.REF ? refs[calleeIndex] : null;
+
+                    if (callee instanceof VMFunction function) {
+                        checkArity(frame, ip, function, argc);
+                        frame.ip = ip;
+                        frame.env = env;
+
+                        Environment callEnv = frameEnvironment(function, sp - argc);
+                        sp = calleeIndex;
+                        pushFrame(function.function, callEnv);
+
+                        frame = frames[frameCount - 1];
+                        code = frame.function.chunk.code;
+                        constants = frame.function.chunk.constants;
+                        constantBits = frame.function.chunk.constantBits;
+                        ip = 0;
+                        env = callEnv;
+                    } else if (callee instanceof LoxCallable function) {
+                        checkArity(frame, ip, function, argc);
+                        List<Object> args = new ArrayList<>(argc);
+                        for (int i = sp - argc; i < sp; i++) {
+                            args.add(NanBox.box(stack[i], refs[i]));
+                        }
+                        sp = calleeIndex;
+                        try {
+                            push(function.call(null, args));
+                        } catch (NativeError error) {
+                            throw error(frame, ip, error.getMessage());
+                        }
+                    } else {
+                        throw error(frame, ip, "Can only call functions and classes");
+                    }
+                }
+                case OpCode.CLOSURE -> {
+                    CompiledFunction function = (CompiledFunction) constants[readShort(code, ip)];
+                    stack[sp] = NanBox.REF;
+                    refs[sp++] = new VMFunction(function, env, this);
+                    ip += 2;
+                }
+                case OpCode.RETURN -> {
+                    long result = stack[sp - 1];
+                    Object resultRef = refs[sp - 1];
+                    frameCount--;
+                    if (frameCount == base) return;
+
+                    sp--;
+                    frame = frames[frameCount - 1];
+                    code = frame.function.chunk.code;
+                    constants = frame.function.chunk.constants;
+                    constantBits = frame.function.chunk.constantBits;
+                    ip = frame.ip;
+                    env = frame.env;
+                    stack[sp] = result;
+                    refs[sp++] = resultRef;
+                }
+                case OpCode.PUSH_SCOPE -> {
+                    env = new Environment(env, readShort(code, ip), true);
+                    ip += 2;
+                }
+                case OpCode.POP_SCOPE -> env = env.enclosing;
+                default -> throw error(frame, ip, "Unknown opcode " + code[ip - 1]);
+            }
+        }
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private void checkNumberOperands(CallFrame frame, int ip) {
+        if (NanBox.isNumber(stack[sp - 1]) && NanBox.isNumber(stack[sp - 2])) return;
+        throw error(frame, ip, "Operands must be a number.");
+    }
+
+    private void checkArity(CallFrame frame, int ip, LoxCallable function, int argc) {
+        if (argc != function.arity()) {
+            throw error(frame, ip, "Expected " + function.arity() +
+                    " args, but got " + argc + " args.");
+        }
+    }
+
+    private static RuntimeError error(CallFrame frame, int ip, String message) {
+        return new RuntimeError(frame.function.chunk.getLine(ip - 1), message);
+    }
+
+    private int currentLine() {
+        if (frameCount == 0) return 0;
+        CallFrame frame = frames[frameCount - 1];
+        return frame.function.chunk.getLine(frame.ip);
+    }
+}
@@ -0,0 +1,38 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Runtime value of a function in the VM: compiled code plus the environment
+ * it closes over.
+ */
+public class VMFunction implements LoxCallable {
+    final CompiledFunction function;
+    final Environment closure;
+    private final VM vm;
+
+    VMFunction(CompiledFunction function, Environment closure, VM vm) {
+        this.function = function;
+        this.closure = closure;
+        this.vm = vm;
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    /**
+     * Only used when something outside the VM's dispatch loop calls the function.
+     * Calls from bytecode push a frame instead.
+     */
+    @Override
+    public Object call(Interpreter interpreter, List<Object> args) {
+        return vm.call(this, args);
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
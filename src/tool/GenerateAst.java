@@ -3,42 +3,57 @@ package tool;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class GenerateAst {
+    private static final List<String> EXPR_TYPES = Arrays.asList(
+            "Assign     : Token name, Expr value | int depth = -1, int slot, Global global",
+            "Binary     : Expr left, Token op, Expr right | byte state",
+            "Call       : Expr callee, Token paren, List<Expr> args",
+            "Grouping   : Expr expression",
+            "Literal    : Object value",
+            "Logical    : Expr left, Token op, Expr right",
+            "Unary      : Token op, Expr right",
+            "Variable   : Token name | int depth = -1, int slot, Global global"
+    );
+
+    private static final List<String> STMT_TYPES = Arrays.asList(
+            "Block      : List<Stmt> statements | int locals",
+            "Expression : Expr expression",
+            "Function   : Token name, List<Token> params," +
+                        "List<Stmt> body | int slot = -1, int locals, boolean declaresFunctions",
+            "If         : Expr condition, Stmt thenBranch," +
+                        " Stmt elseBranch",
+            "Print      : Expr expression",
+            "Return     : Token keyword, Expr value",
+            "Var        : Token name, Expr initializer | int slot = -1",
+            "While      : Expr condition, Stmt body",
+            "Break      : Token self"
+    );
+
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.out.println("Usage: java GenerateAst <output-directory>");
+        boolean records = args.length == 2 && args[0].equals("--records");
+        if (args.length != 1 && !records) {
+            System.out.println("Usage: java GenerateAst [--records] <output-directory>");
             System.exit(64);
         }
-        String outputDir = args[0];
-
-        defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign     : Token name, Expr value",
-                "Binary     : Expr left, Token op, Expr right",
-                "Call       : Expr callee, Token paren, List<Expr> args",
-                "Grouping   : Expr expression",
-                "Literal    : Object value",
-                "Logical    : Expr left, Token op, Expr right",
-                "Unary      : Token op, Expr right",
-                "Variable   : Token name"
-                ));
-
-        defineAst(outputDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
-                "Expression : Expr expression",
-                "Function   : Token name, List<Token> params," +
-                            "List<Stmt> body",
-                "If         : Expr condition, Stmt thenBranch," +
-                            " Stmt elseBranch",
-                "Print      : Expr expression",
-                "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body",
-                "Break      : Token self"
-        ));
+        String outputDir = args[args.length - 1];
+
+        if (records) {
+            defineRecords(outputDir, "Expr", EXPR_TYPES);
+            defineRecords(outputDir, "Stmt", STMT_TYPES);
+            defineRecordConverter(outputDir, "RecordAst");
+            return;
+        }
+        defineAst(outputDir, "Expr", EXPR_TYPES);
+        defineAst(outputDir, "Stmt", STMT_TYPES);
+        defineFlat(outputDir, "FlatAst");
     }
+
     private static void defineAst(
             String outputDir, String baseName, List<String> types)
             throws IOException {
@@ -54,9 +69,11 @@ public class GenerateAst {
         for (String type : types) {
             String[] typeDef = type.strip().split(":");
             String className = typeDef[0].strip();
-            String fields = typeDef[1].trim();
+            String[] fieldDef = typeDef[1].split("\\|");
+            String fields = fieldDef[0].trim();
+            String resolved = fieldDef.length > 1 ? fieldDef[1].trim() : null;
 
-            defineType(writer, baseName, className, fields);
+            defineType(writer, baseName, className, fields, resolved);
         }
 
         writer.println();
@@ -65,8 +82,12 @@ public class GenerateAst {
         writer.println("}");
         writer.close();
     }
+    /**
+     * Fields after a '|' in a type definition are not part of the constructor.
+     * They are left mutable so later passes, such as the Resolver, can fill them in.
+     */
     private static void defineType
-            (PrintWriter writer, String baseName, String className, String fields) {
+            (PrintWriter writer, String baseName, String className, String fields, String resolved) {
             writer.println("    public static class " + className + " extends " + baseName + " {");
             writer.println("        public " + className +"(" + fields + ") {");
 
@@ -87,6 +108,11 @@ public class GenerateAst {
                 field = field.strip();
                 writer.println("        final " + field + ";");
             }
+            if (resolved != null) {
+                for (String field : resolved.split(",")) {
+                    writer.println("        " + field.strip() + ";");
+                }
+            }
             writer.println("    }");
 
     }
@@ -102,4 +128,466 @@ public class GenerateAst {
         writer.println("    }");
 
     }
+
+    /**
+     * Emits a struct-of-arrays form of both trees, for engines that would rather
+     * not chase a pointer per node. Every node is an offset into one int array,
+     * holding its kind followed by its fields in declaration order. Child nodes
+     * are offsets too, tokens index parallel token arrays, lists are offsets into
+     * a second int array (a count, then the items), and fields of any other type
+     * index a side array of that type. The class is also the visitor that copies
+     * a resolved object tree into the arrays.
+     */
+    private static void defineFlat(String outputDir, String className) throws IOException {
+        List<String> types = new ArrayList<>(EXPR_TYPES);
+        types.addAll(STMT_TYPES);
+
+        Set<String> sideTypes = new LinkedHashSet<>();
+        Set<String> sharedTypes = new LinkedHashSet<>();
+        Set<String> listTypes = new LinkedHashSet<>();
+        for (String type : types) {
+            for (String[] field : flatFields(type)) {
+                String fieldType = field[0];
+                if (fieldType.startsWith("List<")) {
+                    listTypes.add(fieldType.substring(5, fieldType.length() - 1));
+                } else if (!isInline(fieldType)) {
+                    sideTypes.add(fieldType);
+                    if (field[2] == null) sharedTypes.add(fieldType);
+                }
+            }
+        }
+
+        String path = outputDir + File.separator + className + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+        writer.println("package lox;");
+        writer.println();
+        writer.println("import java.util.Arrays;");
+        if (!sharedTypes.isEmpty()) writer.println("import java.util.HashMap;");
+        writer.println("import java.util.List;");
+        if (!sharedTypes.isEmpty()) writer.println("import java.util.Map;");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * Generated by tool.GenerateAst from the same definitions as Expr and Stmt.");
+        writer.println(" * The tree as a few flat arrays instead of an object per node. A node is an");
+        writer.println(" * offset into nodes, holding its kind and then its fields in order: child");
+        writer.println(" * nodes as offsets (-1 for none), tokens as indexes into the token arrays,");
+        writer.println(" * lists as offsets into lists (a count, then the items), ints and booleans");
+        writer.println(" * as they are, and anything else as an index into a side array of its type.");
+        writer.println(" * Equal values of fields that never change share one side array entry, and");
+        writer.println(" * fields after the '|' only get an entry once they are set to something.");
+        writer.println(" * A token is its type, line and SymbolTable ID; the lexeme of an identifier");
+        writer.println(" * comes from the SymbolTable, and any other token is spelled by its type.");
+        writer.println(" * Build one with flatten once the Resolver has run.");
+        writer.println(" */");
+        writer.println("final class " + className + " implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {");
+        for (int i = 0; i < types.size(); i++) {
+            writer.println("    static final int " + typeName(types.get(i)).toUpperCase() + " = " + i + ";");
+        }
+        writer.println();
+        writer.println("    private static final TokenType[] TYPES = TokenType.values();");
+        writer.println();
+        writer.println("    int[] nodes = new int[1024];");
+        writer.println("    int[] lists = new int[256];");
+        writer.println("    byte[] tokenTypes = new byte[256];");
+        writer.println("    int[] lines = new int[256];");
+        writer.println("    int[] symbols = new int[256];");
+        for (String sideType : sideTypes) {
+            writer.println("    " + sideType + "[] " + sideArray(sideType) + " = new " + sideType + "[64];");
+        }
+        writer.println("    private final String[] spellings = new String[TYPES.length];");
+        for (String sharedType : sharedTypes) {
+            writer.println("    private Map<" + sharedType + ", Integer> " + decapitalize(sharedType)
+                    + "Index = new HashMap<>();");
+        }
+        writer.println("    private int nodeCount = 0;");
+        writer.println("    private int listCount = 0;");
+        writer.println("    private int tokenCount = 0;");
+        for (String sideType : sideTypes) {
+            writer.println("    private int " + decapitalize(sideType) + "Count = 0;");
+        }
+        writer.println("    /** Offset in lists of the top-level statements. */");
+        writer.println("    int program;");
+        writer.println();
+        writer.println("    private " + className + "() {}");
+        writer.println();
+        writer.println("    static " + className + " flatten(List<Stmt> stmts) {");
+        writer.println("        " + className + " ast = new " + className + "();");
+        writer.println("        ast.program = ast.addStmtList(stmts);");
+        writer.println("        ast.trim();");
+        writer.println("        return ast;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int kind(int node) {");
+        writer.println("        return nodes[node];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int listSize(int list) {");
+        writer.println("        return lists[list];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int listItem(int list, int index) {");
+        writer.println("        return lists[list + 1 + index];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    TokenType tokenType(int token) {");
+        writer.println("        return TYPES[tokenTypes[token]];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    String lexeme(int token) {");
+        writer.println("        int symbol = symbols[token];");
+        writer.println("        return symbol >= 0 ? SymbolTable.name(symbol) : spellings[tokenTypes[token]];");
+        writer.println("    }");
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * @return a Token for the token at that index, made on every call");
+        writer.println("     */");
+        writer.println("    Token token(int token) {");
+        writer.println("        return new Token(tokenType(token), lexeme(token), null, lines[token], symbols[token]);");
+        writer.println("    }");
+
+        for (String type : types) {
+            defineFlatAccessors(writer, type);
+        }
+        for (String type : EXPR_TYPES) {
+            defineFlatVisit(writer, type, "Expr");
+        }
+        for (String type : STMT_TYPES) {
+            defineFlatVisit(writer, type, "Stmt");
+        }
+
+        writer.println();
+        writer.println("    private int addExpr(Expr expr) {");
+        writer.println("        return expr == null ? -1 : expr.accept(this);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private int addStmt(Stmt stmt) {");
+        writer.println("        return stmt == null ? -1 : stmt.accept(this);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private int addToken(Token token) {");
+        writer.println("        if (tokenCount == lines.length) {");
+        writer.println("            int capacity = tokenCount * 2;");
+        writer.println("            tokenTypes = Arrays.copyOf(tokenTypes, capacity);");
+        writer.println("            lines = Arrays.copyOf(lines, capacity);");
+        writer.println("            symbols = Arrays.copyOf(symbols, capacity);");
+        writer.println("        }");
+        writer.println("        tokenTypes[tokenCount] = (byte) token.type.ordinal();");
+        writer.println("        if (token.symbol < 0) spellings[token.type.ordinal()] = token.lexeme;");
+        writer.println("        lines[tokenCount] = token.line;");
+        writer.println("        symbols[tokenCount] = token.symbol;");
+        writer.println("        return tokenCount++;");
+        writer.println("    }");
+        for (String listType : listTypes) {
+            writer.println();
+            writer.println("    private int add" + listType + "List(List<" + listType + "> items) {");
+            writer.println("        int[] flat = new int[items.size()];");
+            writer.println("        for (int i = 0; i < flat.length; i++) {");
+            writer.println("            flat[i] = add" + listType + "(items.get(i));");
+            writer.println("        }");
+            writer.println("        return addList(flat);");
+            writer.println("    }");
+        }
+        writer.println();
+        writer.println("    private int addList(int[] items) {");
+        writer.println("        lists = grow(lists, listCount + 1 + items.length);");
+        writer.println("        int list = listCount;");
+        writer.println("        lists[listCount++] = items.length;");
+        writer.println("        System.arraycopy(items, 0, lists, listCount, items.length);");
+        writer.println("        listCount += items.length;");
+        writer.println("        return list;");
+        writer.println("    }");
+        for (String sideType : sideTypes) {
+            String array = sideArray(sideType);
+            String count = decapitalize(sideType) + "Count";
+            writer.println();
+            writer.println("    private int add" + sideType + "(" + sideType + " value) {");
+            writer.println("        if (" + count + " == " + array + ".length) {");
+            writer.println("            " + array + " = Arrays.copyOf(" + array + ", Math.max(8, " + count + " * 2));");
+            writer.println("        }");
+            writer.println("        " + array + "[" + count + "] = value;");
+            writer.println("        return " + count + "++;");
+            writer.println("    }");
+        }
+        for (String sharedType : sharedTypes) {
+            String index = decapitalize(sharedType) + "Index";
+            writer.println();
+            writer.println("    private int share" + sharedType + "(" + sharedType + " value) {");
+            writer.println("        Integer shared = " + index + ".get(value);");
+            writer.println("        if (shared != null) return shared;");
+            writer.println("        int added = add" + sharedType + "(value);");
+            writer.println("        " + index + ".put(value, added);");
+            writer.println("        return added;");
+            writer.println("    }");
+        }
+        writer.println();
+        writer.println("    private int node(int kind, int... fields) {");
+        writer.println("        nodes = grow(nodes, nodeCount + 1 + fields.length);");
+        writer.println("        int node = nodeCount;");
+        writer.println("        nodes[nodeCount++] = kind;");
+        writer.println("        System.arraycopy(fields, 0, nodes, nodeCount, fields.length);");
+        writer.println("        nodeCount += fields.length;");
+        writer.println("        return node;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static int[] grow(int[] array, int size) {");
+        writer.println("        if (size <= array.length) return array;");
+        writer.println("        return Arrays.copyOf(array, Math.max(array.length * 2, size));");
+        writer.println("    }");
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * Drops the spare capacity left from building.");
+        writer.println("     */");
+        writer.println("    private void trim() {");
+        writer.println("        nodes = Arrays.copyOf(nodes, nodeCount);");
+        writer.println("        lists = Arrays.copyOf(lists, listCount);");
+        writer.println("        tokenTypes = Arrays.copyOf(tokenTypes, tokenCount);");
+        writer.println("        lines = Arrays.copyOf(lines, tokenCount);");
+        writer.println("        symbols = Arrays.copyOf(symbols, tokenCount);");
+        for (String sideType : sideTypes) {
+            String array = sideArray(sideType);
+            writer.println("        " + array + " = Arrays.copyOf(" + array + ", " + decapitalize(sideType) + "Count);");
+        }
+        for (String sharedType : sharedTypes) {
+            writer.println("        " + decapitalize(sharedType) + "Index = null;");
+        }
+        writer.println("    }");
+        writer.println("}");
+        writer.close();
+    }
+
+    /**
+     * Getters for every field of a node type, and setters for the fields after
+     * the '|', which engines may use as caches.
+     */
+    private static void defineFlatAccessors(PrintWriter writer, String type) {
+        String prefix = decapitalize(typeName(type));
+        List<String[]> fields = flatFields(type);
+        for (int i = 0; i < fields.size(); i++) {
+            String fieldType = fields.get(i)[0];
+            String name = prefix + capitalize(fields.get(i)[1]);
+            String slot = "nodes[node + " + (i + 1) + "]";
+            boolean mutable = fields.get(i)[2] != null;
+
+            writer.println();
+            if (fieldType.equals("boolean")) {
+                writer.println("    boolean " + name + "(int node) {");
+                writer.println("        return " + slot + " != 0;");
+            } else if (isInline(fieldType) || fieldType.startsWith("List<")) {
+                writer.println("    int " + name + "(int node) {");
+                writer.println("        return " + slot + ";");
+            } else if (!mutable) {
+                writer.println("    " + fieldType + " " + name + "(int node) {");
+                writer.println("        return " + sideArray(fieldType) + "[" + slot + "];");
+            } else {
+                writer.println("    " + fieldType + " " + name + "(int node) {");
+                writer.println("        int index = " + slot + ";");
+                writer.println("        return index < 0 ? null : " + sideArray(fieldType) + "[index];");
+            }
+            writer.println("    }");
+
+            if (!mutable) continue;
+            writer.println();
+            writer.println("    void set" + capitalize(name) + "(int node, " + fieldType + " value) {");
+            if (fieldType.equals("boolean")) {
+                writer.println("        " + slot + " = value ? 1 : 0;");
+            } else if (isInline(fieldType)) {
+                writer.println("        " + slot + " = value;");
+            } else {
+                writer.println("        if (" + slot + " < 0) {");
+                writer.println("            " + slot + " = add" + fieldType + "(value);");
+                writer.println("        } else {");
+                writer.println("            " + sideArray(fieldType) + "[" + slot + "] = value;");
+                writer.println("        }");
+            }
+            writer.println("    }");
+        }
+    }
+
+    private static void defineFlatVisit(PrintWriter writer, String type, String baseName) {
+        String className = typeName(type);
+        String param = baseName.toLowerCase();
+        StringBuilder args = new StringBuilder(className.toUpperCase());
+        for (String[] field : flatFields(type)) {
+            String fieldType = field[0];
+            String value = param + "." + field[1];
+            args.append(", ");
+            if (fieldType.equals("int")) {
+                args.append(value);
+            } else if (fieldType.equals("boolean")) {
+                args.append(value).append(" ? 1 : 0");
+            } else if (fieldType.startsWith("List<")) {
+                args.append("add").append(fieldType, 5, fieldType.length() - 1).append("List(").append(value).append(")");
+            } else if (field[2] != null) {
+                args.append(value).append(" == null ? -1 : add").append(fieldType).append("(").append(value).append(")");
+            } else if (!isInline(fieldType)) {
+                args.append("share").append(fieldType).append("(").append(value).append(")");
+            } else {
+                args.append("add").append(fieldType).append("(").append(value).append(")");
+            }
+        }
+
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    public Integer visit" + className + baseName + "(" + baseName + "." + className + " " + param + ") {");
+        writer.println("        return node(" + args + ");");
+        writer.println("    }");
+    }
+
+    /**
+     * Emits the tree as a sealed interface with a record per node type, for
+     * engines that dispatch with a pattern switch instead of a Visitor. Records
+     * can't be updated, so the fields after the '|' only become components when
+     * they are ints or booleans the Resolver worked out; caches such as the
+     * Global cell are left out.
+     */
+    private static void defineRecords(String outputDir, String baseName, List<String> types)
+            throws IOException {
+        String interfaceName = baseName + "Node";
+        String path = outputDir + File.separator + interfaceName + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+        writer.println("package lox;");
+        writer.println();
+        writer.println("import java.util.List;");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * Generated by tool.GenerateAst --records from the same definitions as " + baseName + ".");
+        writer.println(" * Build one with RecordAst.convert once the Resolver has run.");
+        writer.println(" */");
+        writer.println("public sealed interface " + interfaceName + " {");
+        for (String type : types) {
+            StringBuilder components = new StringBuilder();
+            for (String[] field : recordFields(type)) {
+                if (components.length() > 0) components.append(", ");
+                components.append(recordType(field[0])).append(" ").append(field[1]);
+            }
+            writer.println("    record " + typeName(type) + "(" + components + ") implements " + interfaceName + " {}");
+        }
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineRecordConverter(String outputDir, String className) throws IOException {
+        String path = outputDir + File.separator + className + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+        writer.println("package lox;");
+        writer.println();
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.List;");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * Generated by tool.GenerateAst --records.");
+        writer.println(" * Copies a resolved Expr/Stmt tree into ExprNode and StmtNode records.");
+        writer.println(" */");
+        writer.println("final class " + className
+                + " implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {");
+        writer.println("    private " + className + "() {}");
+        writer.println();
+        writer.println("    static List<StmtNode> convert(List<Stmt> stmts) {");
+        writer.println("        return new " + className + "().stmts(stmts);");
+        writer.println("    }");
+        for (String type : EXPR_TYPES) {
+            defineRecordVisit(writer, type, "Expr");
+        }
+        for (String type : STMT_TYPES) {
+            defineRecordVisit(writer, type, "Stmt");
+        }
+        for (String baseName : new String[] {"Expr", "Stmt"}) {
+            String param = baseName.toLowerCase();
+            writer.println();
+            writer.println("    private " + baseName + "Node " + param + "(" + baseName + " " + param + ") {");
+            writer.println("        return " + param + " == null ? null : " + param + ".accept(this);");
+            writer.println("    }");
+            writer.println();
+            writer.println("    private List<" + baseName + "Node> " + param + "s(List<" + baseName + "> items) {");
+            writer.println("        List<" + baseName + "Node> nodes = new ArrayList<>(items.size());");
+            writer.println("        for (" + baseName + " item : items) {");
+            writer.println("            nodes.add(" + param + "(item));");
+            writer.println("        }");
+            writer.println("        return nodes;");
+            writer.println("    }");
+        }
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineRecordVisit(PrintWriter writer, String type, String baseName) {
+        String className = typeName(type);
+        String param = baseName.toLowerCase();
+        StringBuilder args = new StringBuilder();
+        for (String[] field : recordFields(type)) {
+            String fieldType = field[0];
+            String value = param + "." + field[1];
+            if (args.length() > 0) args.append(", ");
+            if (fieldType.equals("Expr") || fieldType.equals("Stmt")) {
+                args.append(fieldType.toLowerCase()).append("(").append(value).append(")");
+            } else if (fieldType.equals("List<Expr>") || fieldType.equals("List<Stmt>")) {
+                args.append(fieldType.substring(5, 9).toLowerCase()).append("s(").append(value).append(")");
+            } else {
+                args.append(value);
+            }
+        }
+
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    public " + baseName + "Node visit" + className + baseName + "(" + baseName + "." + className + " " + param + ") {");
+        writer.println("        return new " + baseName + "Node." + className + "(" + args + ");");
+        writer.println("    }");
+    }
+
+    /**
+     * @return the fields of a type that become record components
+     */
+    private static List<String[]> recordFields(String type) {
+        List<String[]> fields = new ArrayList<>();
+        for (String[] field : flatFields(type)) {
+            boolean resolved = field[0].equals("int") || field[0].equals("boolean");
+            if (field[2] == null || resolved) fields.add(field);
+        }
+        return fields;
+    }
+
+    private static String recordType(String fieldType) {
+        return fieldType.replaceAll("\\b(Expr|Stmt)\\b", "$1Node");
+    }
+
+    /**
+     * Byte fields after the '|' are left out: they are the Interpreter's own
+     * caches of what a node has seen at runtime, such as Binary's state.
+     * @return type, name and, for fields after the '|', a non-null marker, per field
+     */
+    private static List<String[]> flatFields(String type) {
+        String[] fieldDef = type.split(":")[1].split("\\|");
+        List<String[]> fields = new ArrayList<>();
+        for (int part = 0; part < fieldDef.length; part++) {
+            for (String field : fieldDef[part].split(",")) {
+                String[] words = field.split("=")[0].strip().split(" ");
+                if (part > 0 && words[0].equals("byte")) continue;
+                fields.add(new String[] {words[0], words[1], part > 0 ? "mutable" : null});
+            }
+        }
+        return fields;
+    }
+
+    private static boolean isInline(String fieldType) {
+        return switch (fieldType) {
+            case "Expr", "Stmt", "Token", "int", "boolean" -> true;
+            default -> false;
+        };
+    }
+
+    private static String typeName(String type) {
+        return type.split(":")[0].trim();
+    }
+
+    private static String sideArray(String fieldType) {
+        return decapitalize(fieldType) + "s";
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String decapitalize(String name) {
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
 }